@@ -3,10 +3,13 @@ package com.davidhaas.mazeways;
 import android.graphics.Bitmap;
 import android.util.Log;
 
+import com.davidhaas.mazeways.pathfinding.MazeGrid;
+
 import org.opencv.android.Utils;
 import org.opencv.core.CvException;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
@@ -14,6 +17,7 @@ import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.core.Core;
+import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
@@ -159,60 +163,117 @@ public class CVUtils {
         corners[2] = corners[3];
         corners[3] = temp;
 
-        MatOfPoint cornerMat = new MatOfPoint(corners);
-        Rect bRect = boundingRect(cornerMat);
-
         // Ensures the bounding rect doesn't go outside the image
-        int rightX = bRect.x + bRect.width;
-        int bottomY = bRect.y + bRect.height;
-        if (rightX > image.width())
-            bRect = new Rect(bRect.x, bRect.y, bRect.width - (rightX - image.width()), bRect.height);
-        if (bottomY > image.height())
-            bRect = new Rect(bRect.x, bRect.y, bRect.width, bRect.height - (bottomY - image.height()));
-        if (bRect.x < 0)
-            bRect = new Rect(0, bRect.y, bRect.width, bRect.height - (bottomY - image.height()));
-        if (bRect.y < 0)
-            bRect = new Rect(bRect.x, 0, bRect.width, bRect.height - (bottomY - image.height()));
-
-        // Creates an empty "canvas" in the shape of the size of the image
-        Mat mask8 = Mat.zeros(image.size(), CV_8UC1);
+        Rect bRect = boundingRect(new MatOfPoint(corners));
+        int leftX = Math.max(bRect.x, 0), topY = Math.max(bRect.y, 0);
+        int rightX = Math.min(bRect.x + bRect.width, image.width());
+        int bottomY = Math.min(bRect.y + bRect.height, image.height());
+        bRect = new Rect(leftX, topY, rightX - leftX, bottomY - topY);
+
+        // Only the bounding rect is masked and copied, so the work follows the size of the
+        // quadrilateral instead of the image. The corners are moved into the rect's coordinates.
+        for (Point corner : corners) {
+            corner.x -= bRect.x;
+            corner.y -= bRect.y;
+        }
+        MatOfPoint cornerMat = new MatOfPoint(corners);
 
         // Creates a mask in the shape of the polygon
-        //Core.fillConvexPoly(mask8, cornerMat, new Scalar(255, 255, 255));
+        Mat mask8 = Mat.zeros(bRect.size(), CV_8UC1);
         Imgproc.fillConvexPoly(mask8, cornerMat, new Scalar(255, 255, 255));
 
-        // Copies the relevant part of the image into the polygon mask
-        Mat result = new Mat(image.size(), image.type(), new Scalar(255, 255, 255));
-        image.copyTo(result, mask8);
+        // Copies the relevant part of the image into the polygon mask, over white
+        Mat result = new Mat(bRect.size(), image.type(), new Scalar(255, 255, 255));
+        Mat section = image.submat(bRect);
+        section.copyTo(result, mask8);
 
+        section.release();
         mask8.release();
+        cornerMat.release();
 
-        // Returns the masked image with the rest of the image being 0s
-        return result.submat(bRect);
+        return result;
     }
 
     /**
-     * Converts a Mat into a 2d binary int array
+     * Decodes compressed image bytes straight to 8 bit gray, letting the decoder shrink the image,
+     * which for a JPEG skips most of the work of decoding it at full size. The orientation in its
+     * EXIF data is ignored, the same as when it's decoded to a Bitmap.
+     * @param data The compressed bytes, such as a JPEG
+     * @param reduction How many times smaller to decode it: 1, 2, 4 or 8
+     * @return The grayscale Mat
+     */
+    public static Mat decodeGrayscale(byte[] data, int reduction) {
+        int flags;
+        switch (reduction) {
+            case 1:
+                flags = Imgcodecs.IMREAD_GRAYSCALE;
+                break;
+            case 2:
+                flags = Imgcodecs.IMREAD_REDUCED_GRAYSCALE_2;
+                break;
+            case 4:
+                flags = Imgcodecs.IMREAD_REDUCED_GRAYSCALE_4;
+                break;
+            case 8:
+                flags = Imgcodecs.IMREAD_REDUCED_GRAYSCALE_8;
+                break;
+            default:
+                throw new IllegalArgumentException("The decoder can only reduce by 1, 2, 4 or 8: " + reduction);
+        }
+
+        MatOfByte buffer = new MatOfByte(data);
+        Mat gray = Imgcodecs.imdecode(buffer, flags | Imgcodecs.IMREAD_IGNORE_ORIENTATION);
+        buffer.release();
+        if (gray.empty())
+            throw new CvException("Couldn't decode the image");
+        Log.i(TAG, "decodeGrayscale: " + data.length + " bytes to " + gray.size() + " at 1/" + reduction);
+        return gray;
+    }
+
+    /**
+     * The bounding rect of a set of points, grown by a padding and clipped to an image.
+     * @param points The points, as {x, y}
+     * @param padding The number of pixels to grow each side by
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return The padded rect, inside the image
+     */
+    public static Rect paddedBounds(int[][] points, int padding, int width, int height) {
+        int minX = points[0][0], minY = points[0][1], maxX = minX, maxY = minY;
+        for (int[] p : points) {
+            minX = Math.min(minX, p[0]);
+            minY = Math.min(minY, p[1]);
+            maxX = Math.max(maxX, p[0]);
+            maxY = Math.max(maxY, p[1]);
+        }
+        int leftX = Math.max(0, minX - padding), topY = Math.max(0, minY - padding);
+        int rightX = Math.min(width, maxX + padding + 1), bottomY = Math.min(height, maxY + padding + 1);
+        return new Rect(leftX, topY, Math.max(1, rightX - leftX), Math.max(1, bottomY - topY));
+    }
+
+    /**
+     * Converts a Mat into a bit-packed binary grid where black pixels are walls
      * @param mat The input Mat
-     * @return The 2d binary array
+     * @return The binary grid
      */
-    public static int[][] getBinaryArray(Mat mat) {
-        // Reads the matrix into a byte array where the first index is pixel, second index is channel
-        int frameSize = mat.rows() * mat.cols();
-        byte[] byteBuffer = new byte[frameSize];
-        mat.get(0, 0, byteBuffer);
-
-        //write to separate R,G,B arrays
-        int[][] out = new int[mat.rows()][mat.cols()];
-        for (int i = 0, c = 0; i < mat.rows(); i++) {
-            for (int j = 0; j < mat.cols(); j++, c++) {
-                if (byteBuffer[c] == 0)
-                    out[i][j] = 1;
-                else
-                    out[i][j] = 0;
+    public static MazeGrid getBinaryGrid(Mat mat) {
+        final int rows = mat.rows(), cols = mat.cols();
+        MazeGrid grid = new MazeGrid(cols, rows);
+
+        // Reads the matrix a row at a time and packs 64 pixels into each word of the grid
+        byte[] rowBuffer = new byte[cols];
+        for (int i = 0; i < rows; i++) {
+            mat.get(i, 0, rowBuffer);
+            for (int j = 0, w = 0; j < cols; j += 64, w++) {
+                long word = 0;
+                for (int b = 0, end = Math.min(64, cols - j); b < end; b++) {
+                    if (rowBuffer[j + b] == 0)
+                        word |= 1L << b;
+                }
+                grid.setWord(i, w, word);
             }
         }
-        return out;
+        return grid;
     }
 
     /**
@@ -1,18 +1,135 @@
 package com.davidhaas.mazeways;
 
 import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
 import android.view.View;
 
 /**
  * Name: Pointer
- * Purpose: A pointer to select the start and end of the maze
+ * Purpose: A pointer to select the start and end of the maze. It's laid over the solution image
+ * and can be dragged. Touches that miss it fall through to the views underneath.
  * Author: David Haas
  * Created: 7/2/18
  */
 
 public class Pointer extends View {
+    private static final int RADIUS = 24;
+    private static final float FEATHER = 2.2f; // How much further than the radius a touch can grab it
+    private Paint fillPaint;
+    private Paint ringPaint;
+    private float mPosX, mPosY;
+    private boolean placed;   // Whether it has a location yet, since there's nothing to draw before
+    private boolean dragging;
+    private OnMoveListener listener;
+
+    /**
+     * Receives the pointer's location while it's dragged.
+     */
+    public interface OnMoveListener {
+        /**
+         * @param pointer The pointer being dragged
+         * @param x The x-coordinate of its center in the view
+         * @param y The y-coordinate of its center in the view
+         * @param done Whether the drag has ended
+         */
+        void onMove(Pointer pointer, float x, float y, boolean done);
+    }
+
+    /**
+     * Initializes the Pointer.
+     * @param context The context.
+     * @param attrs Any attributes.
+     */
     public Pointer (Context context, AttributeSet attrs) {
         super(context, attrs);
+
+        fillPaint = new Paint();
+        fillPaint.setColor(Color.argb(255, 84, 110, 122));
+        fillPaint.setAntiAlias(true);
+
+        ringPaint = new Paint();
+        ringPaint.setColor(Color.WHITE);
+        ringPaint.setStyle(Paint.Style.STROKE);
+        ringPaint.setStrokeWidth(6);
+        ringPaint.setAntiAlias(true);
+    }
+
+    public void setColor(int color) {
+        fillPaint.setColor(color);
+        invalidate();
+    }
+
+    public void setOnMoveListener(OnMoveListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Moves the pointer without telling the listener, such as to snap it back after a drag.
+     * @param x The x-coordinate of its center in the view
+     * @param y The y-coordinate of its center in the view
+     */
+    public void setLocation(float x, float y) {
+        mPosX = x;
+        mPosY = y;
+        placed = true;
+        invalidate();
+    }
+
+    /**
+     * See if a point is close enough to the pointer to grab it.
+     * @param x The x-coordinate
+     * @param y The y-coordinate
+     * @return Whether or not the point grabs the pointer
+     */
+    public boolean contains(float x, float y) {
+        float dx = x - mPosX, dy = y - mPosY;
+        return placed && dx * dx + dy * dy <= RADIUS * FEATHER * RADIUS * FEATHER;
+    }
+
+    /**
+     * Drags the pointer when it's touched, and passes on any touch that misses it.
+     * @param event The touch event
+     */
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                dragging = getVisibility() == VISIBLE && contains(event.getX(), event.getY());
+                return dragging;
+            case MotionEvent.ACTION_MOVE:
+                if (!dragging)
+                    return false;
+                setLocation(event.getX(), event.getY());
+                if (listener != null)
+                    listener.onMove(this, mPosX, mPosY, false);
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (!dragging)
+                    return false;
+                dragging = false;
+                if (listener != null)
+                    listener.onMove(this, mPosX, mPosY, true);
+                return true;
+        }
+        return dragging;
+    }
+
+    /**
+     * Draws the Pointer
+     * @param canvas The canvas to draw the Pointer on.
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if (placed) {
+            canvas.drawCircle(mPosX, mPosY, RADIUS, fillPaint);
+            canvas.drawCircle(mPosX, mPosY, RADIUS, ringPaint);
+        }
     }
 }
@@ -3,19 +3,21 @@ package com.davidhaas.mazeways;
 import android.app.Activity;
 import android.content.Intent;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
-import android.provider.MediaStore;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
@@ -23,20 +25,33 @@ import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.davidhaas.mazeways.pathfinding.AnytimeAStar;
 import com.davidhaas.mazeways.pathfinding.Asolution;
+import com.davidhaas.mazeways.pathfinding.DStarLite;
+import com.davidhaas.mazeways.pathfinding.DistanceField;
+import com.davidhaas.mazeways.pathfinding.MazeGrid;
+import com.davidhaas.mazeways.pathfinding.PackedPath;
+import com.davidhaas.mazeways.pathfinding.SolveControl;
+import com.davidhaas.mazeways.pathfinding.SolveResult;
+import com.davidhaas.mazeways.pathfinding.SolveStats;
+import com.davidhaas.mazeways.pathfinding.SolverBenchmark;
 import com.google.firebase.analytics.FirebaseAnalytics;
 import com.wang.avi.AVLoadingIndicatorView;
 
-import org.opencv.android.Utils;
+import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Rect;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import android.graphics.Point;
 
@@ -51,17 +66,40 @@ public class SolutionActivity extends Activity {
 
     private static final String TAG = "SolutionActivity";
     private final int SOLVING_SCALE_FACTOR = 2; // The amount the maze scales down before using A*
+    private final int ROI_PADDING = 32; // Photo pixels around the selection for the blur and threshold to see, at least their radii
     private final int VIEW_SCALE_FACTOR = 4;
-    private final int MAZE_SOLVED = 1, MAZE_NOT_SOLVED = 0, IMG_DEBUG = -1, RECYCLE_IMG = -2;
+    private final int MAZE_SOLVED = 1, MAZE_NOT_SOLVED = 0, IMG_DEBUG = -1, RECYCLE_IMG = -2, MAZE_IMPROVED = 2;
+    private final int EDITOR_READY = 3, MAZE_EDITED = 4, FIELD_READY = 5, HEAT_MAP = 6;
+    private final int BRUSH_RADIUS = 2; // Half the width of a painted or erased wall, in maze pixels
+    private final int GRAB_RADIUS = 12; // How close a touch has to be to an entrance to drag it, in maze pixels
     private final long MIN_LOAD_TIME = 1000; // The min time to show the loading icon
+    private final long MAX_SOLVE_TIME = 30000; // The time A* gets before it settles for its best path so far
+    private final int HIERARCHICAL_MIN_PIXELS = 4000000; // Bigger mazes are solved on clusters, which is faster but not always shortest
+    private final boolean BENCHMARK_SOLVERS = false; // Logs how each solver does on the maze before solving it
     private Point mazeCorner;
     private ImageView imageView;
     private TextView loadingText;
     private TextView failText;
     private AVLoadingIndicatorView loadingIcon;
     private Button backButton;
+    private Button editButton;
+    private Button heatButton;
+    private Pointer startPointer;
+    private Pointer endPointer;
     private Handler mHandler;
     private FirebaseAnalytics mFirebaseAnalytics;
+    private final SolveControl solveControl = new SolveControl(); // Stops the solution thread when the activity goes away
+    private final SolveControl replanControl = new SolveControl(); // Stops the edit mode's first search likewise
+    private final ExecutorService replanExecutor = Executors.newSingleThreadExecutor(); // Runs the repairs
+    private final ReplanWorker replanWorker = new ReplanWorker();
+    private DStarLite replanner; // Repairs the solution after edits, only on the replan thread once it's readied
+    private MazeGrid editMaze;   // The UI thread's copy of the replanner's maze, for touches and drawing
+    private int editStart, editEnd; // The UI thread's copy of the entrances, as i * width + j
+    private MazeGrid edits;      // The maze pixels the user has painted or erased
+    private DistanceField distanceField; // Routes the end anywhere while the start and walls are unchanged
+    private int fieldVersion;    // Counts the changes to the start and walls, to tell a stale field apart
+    private boolean editing;
+    private boolean showingHeat;
     //private Bitmap image;
 
     /**
@@ -87,14 +125,24 @@ public class SolutionActivity extends Activity {
         loadingIcon = findViewById(R.id.loadingIcon);
         failText = findViewById(R.id.failText);
         backButton = findViewById(R.id.backButton);
+        editButton = findViewById(R.id.editButton);
+        heatButton = findViewById(R.id.heatButton);
+        startPointer = findViewById(R.id.startPointer);
+        endPointer = findViewById(R.id.endPointer);
 
         Typeface font = Typeface.createFromAsset(getAssets(), "fonts/press_start_2p.ttf");
         loadingText.setTypeface(font);
         failText.setTypeface(font);
         backButton.setTypeface(font);
+        editButton.setTypeface(font);
+        heatButton.setTypeface(font);
 
         failText.setVisibility(View.INVISIBLE);
         backButton.setVisibility(View.INVISIBLE);
+        editButton.setVisibility(View.INVISIBLE);
+        heatButton.setVisibility(View.INVISIBLE);
+        startPointer.setVisibility(View.INVISIBLE);
+        endPointer.setVisibility(View.INVISIBLE);
         startLoading();
 
         // Loads the intent
@@ -102,10 +150,15 @@ public class SolutionActivity extends Activity {
         Bundle bundle = intent.getExtras();
         final int[][] corners = (int[][]) bundle.getSerializable(CornerSelectActivity.CORNERS);
 
-        // Loads the intent image as a bitmap for processing
+        // Reads the intent image's compressed bytes once. They're decoded straight to view size for
+        // display here, and to grayscale at a reduced size for processing in the solution thread,
+        // so the full size photo is never held as an ARGB bitmap.
         Uri imgUri = Uri.parse(bundle.getString(MainActivity.IMAGE_URI));
         try {
-            Bitmap image = MediaStore.Images.Media.getBitmap(this.getContentResolver(), imgUri);
+            byte[] data = readBytes(imgUri);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = VIEW_SCALE_FACTOR;
+            Bitmap image = BitmapFactory.decodeByteArray(data, 0, data.length, options);
 
             // Rotate the image if its wider than it is long
             if (image.getWidth() > image.getHeight())
@@ -113,7 +166,7 @@ public class SolutionActivity extends Activity {
 
             mHandler = new MazeUIHandler(Looper.getMainLooper(), image);
 
-            Runnable solnRunnable = new SolutionRunnable(image, corners);
+            Runnable solnRunnable = new SolutionRunnable(data, corners);
             new Thread(solnRunnable).start();
             //image.recycle();
         } catch (Exception e) {
@@ -128,6 +181,48 @@ public class SolutionActivity extends Activity {
             }
         });
 
+        // Toggles the edit mode, where touches paint and erase walls and drag the entrances
+        editButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                editing = !editing;
+                editButton.setText(editing ? R.string.done_editing : R.string.edit);
+            }
+        });
+        imageView.setOnTouchListener(new MazeEditListener());
+
+        // Toggles between the route and how far every part of the maze is from the start
+        heatButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                if (showingHeat) {
+                    replan(false);
+                } else {
+                    showHeat(true);
+                    mHandler.obtainMessage(HEAT_MAP, distanceField).sendToTarget();
+                }
+            }
+        });
+
+        // Dragging either pointer re-solves from the new entrance
+        PointerMoveListener pointerListener = new PointerMoveListener();
+        startPointer.setColor(Color.argb(255, 102, 187, 106));
+        endPointer.setColor(Color.argb(255, 239, 83, 80));
+        startPointer.setOnMoveListener(pointerListener);
+        endPointer.setOnMoveListener(pointerListener);
+
+    }
+
+    /**
+     * Stops the solution thread, since nothing will be left to show its result.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        solveControl.cancel();
+        replanControl.cancel();
+        replanWorker.cancel();
+        replanExecutor.shutdownNow();
     }
 
     @Override
@@ -152,12 +247,13 @@ public class SolutionActivity extends Activity {
      */
     private class MazeUIHandler extends Handler {
         private boolean debugging;
+        private boolean solved; // Once the final path is drawn, interim ones are stale
         private Bitmap image;
 
         /**
          * The constructor for the UI handler.
          * @param myLooper The main thread's looper.
-         * @param image The image containing the maze.
+         * @param image The image containing the maze, at view size.
          */
         private MazeUIHandler(Looper myLooper, Bitmap image) {
             super(myLooper);
@@ -176,14 +272,16 @@ public class SolutionActivity extends Activity {
                 case MAZE_SOLVED:
                     if (!debugging) {
                         Bundle b = (Bundle) msg.obj;
-                        Stack<int[]> path = (Stack<int[]>) b.getSerializable("path");
-                        int[][] binaryMaze = (int[][]) b.getSerializable("binary");
+                        PackedPath path = (PackedPath) b.getSerializable("path");
+                        MazeGrid binaryMaze = (MazeGrid) b.getSerializable("binary");
+                        Log.i(TAG, "handleMessage: Solve stats: " + b.getSerializable("stats"));
+                        solved = true;
 
                         stopLoading();
-                        drawSolution(path, binaryMaze, image);
+                        drawSolution(path, binaryMaze, null, image);
                         Log.i(TAG, "handleMessage: Original img dims: " + image.getWidth() + ", " + image.getHeight());
                         Log.i(TAG, "handleMessage: Image: " + image);
-                        image.recycle();
+                        // The image is kept to redraw the solution after edits, until RECYCLE_IMG
 
                         backButton.setVisibility(View.VISIBLE);
 
@@ -192,6 +290,66 @@ public class SolutionActivity extends Activity {
                         mFirebaseAnalytics.logEvent("MAZE_PROCESSED", fireB);
                     }
                     break;
+                case MAZE_IMPROVED:
+                    // An interim path from the anytime search, drawn while it keeps improving
+                    if (!debugging && !solved && image != null && !image.isRecycled()) {
+                        Bundle b = (Bundle) msg.obj;
+                        Log.i(TAG, "handleMessage: Path within " + b.getDouble("bound") + " of optimal");
+                        drawSolution((PackedPath) b.getSerializable("path"),
+                                (MazeGrid) b.getSerializable("binary"), null, image);
+                    }
+                    break;
+                case FIELD_READY:
+                    // A field rebuilt by the replan thread is dropped if the maze changed again since
+                    if (!debugging && msg.arg1 == fieldVersion) {
+                        distanceField = (DistanceField) msg.obj; // Its button waits for the replanner
+                        if (editMaze != null)
+                            heatButton.setVisibility(View.VISIBLE);
+                    }
+                    break;
+                case HEAT_MAP:
+                    if (image != null && !image.isRecycled()) {
+                        DistanceField field = (DistanceField) msg.obj;
+                        failText.setVisibility(View.INVISIBLE);
+                        drawHeatMap(field, field.getMaze(), image);
+                    }
+                    break;
+                case EDITOR_READY:
+                    if (!debugging) {
+                        // Nothing else holds the replanner yet, so its state can be copied here
+                        replanner = (DStarLite) msg.obj;
+                        editMaze = new MazeGrid(replanner.getMaze());
+                        editStart = replanner.getStart();
+                        editEnd = replanner.getEnd();
+                        edits = new MazeGrid(editMaze.getWidth(), editMaze.getHeight());
+                        editButton.setVisibility(View.VISIBLE);
+                        if (distanceField != null)
+                            heatButton.setVisibility(View.VISIBLE);
+
+                        // Waits for the solution to be laid out so the pointers land on the entrances
+                        imageView.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                placePointer(startPointer, editStart);
+                                placePointer(endPointer, editEnd);
+                                startPointer.setVisibility(View.VISIBLE);
+                                endPointer.setVisibility(View.VISIBLE);
+                            }
+                        });
+                    }
+                    break;
+                case MAZE_EDITED:
+                    if (image != null && !image.isRecycled()) {
+                        Bundle b = (Bundle) msg.obj;
+                        PackedPath path = (PackedPath) b.getSerializable("path");
+                        showHeat(false);
+                        failText.setVisibility(path == null ? View.VISIBLE : View.INVISIBLE);
+                        if (b.getBoolean("preview"))
+                            drawPreview(path, image);
+                        else
+                            drawSolution(path, editMaze, edits, image);
+                    }
+                    break;
                 case MAZE_NOT_SOLVED:
                     if (!debugging) {
                         stopLoading();
@@ -234,17 +392,17 @@ public class SolutionActivity extends Activity {
      * A thread to solve the maze in the background while the loading icon is being displayed.
      */
     private class SolutionRunnable implements Runnable {
-        private Bitmap image;
+        private byte[] data;
         private int[][] corners;
 
         /**
          * The constructor for the solution runnable thread
-         * @param image The image containing the maze
+         * @param data The compressed bytes of the image containing the maze
          * @param corners The four corners that define the user's selected region
          */
-        private SolutionRunnable(Bitmap image, int[][] corners) {
+        private SolutionRunnable(byte[] data, int[][] corners) {
             // store parameter for later user
-            this.image = image;
+            this.data = data;
             this.corners = corners;
         }
 
@@ -256,15 +414,56 @@ public class SolutionActivity extends Activity {
             int state;
             final long startTime = System.currentTimeMillis();
 
-            Mat croppedMaze = getCroppedMaze(corners, image);
-            int[][] croppedBinaryMaze = CVUtils.getBinaryArray(croppedMaze);
+            Mat croppedMaze = getCroppedMaze(corners, data);
+            data = null; // Only needed for the decode
+            final MazeGrid croppedBinaryMaze = CVUtils.getBinaryGrid(croppedMaze);
             croppedMaze.release();
-
-            // Runs A* on the maze and gets the solution stack
-            Stack<int[]> solution = null;
+            if (solveControl.isCancelled())
+                return;
+
+            // Runs A* on the maze and gets the solution path
+            PackedPath solution = null;
+            SolveStats stats = null;
+            Asolution mySol = null;
+            boolean poster = (long) croppedBinaryMaze.getWidth() * croppedBinaryMaze.getHeight() > HIERARCHICAL_MIN_PIXELS;
             try {
-                Asolution mySol = new Asolution(croppedBinaryMaze);
-                solution = mySol.getPath();
+                mySol = new Asolution(croppedBinaryMaze);
+                if (BENCHMARK_SOLVERS)
+                    SolverBenchmark.compareQueues(mySol, 5);
+
+                // Races the portfolio, whose anytime search shows each path it finds while the race
+                // runs. Poster-size mazes are too big to search pixel by pixel, so they use clusters.
+                if (poster)
+                    mySol.setEngine(Asolution.Engine.HIERARCHICAL);
+                mySol.setImprovedPathListener(new AnytimeAStar.ImprovedPathListener() {
+                    @Override
+                    public void onImprovedPath(PackedPath path, double bound) {
+                        Bundle b = new Bundle();
+                        b.putSerializable("path", path);
+                        b.putSerializable("binary", croppedBinaryMaze);
+                        b.putDouble("bound", bound);
+                        mHandler.obtainMessage(MAZE_IMPROVED, b).sendToTarget();
+                    }
+                });
+
+                solveControl.setTimeLimit(MAX_SOLVE_TIME);
+                solveControl.setProgressListener(new SolveControl.ProgressListener() {
+                    @Override
+                    public void onProgress(int expanded, int fCost) {
+                        Log.d(TAG, "run: Expanded " + expanded + " cells, f-cost " + fCost);
+                    }
+                });
+                SolveResult result = poster ? mySol.solve(solveControl) : mySol.solvePortfolio(solveControl);
+                Log.i(TAG, "run: Solve status: " + result.getStatus() + " by " + result.getEngine());
+                if (result.getStatus() == SolveResult.Status.CANCELLED)
+                    return;
+
+                // Which engine wins on real photos decides the default portfolio
+                Bundle engineB = new Bundle();
+                engineB.putString(FirebaseAnalytics.Param.VALUE, String.valueOf(result.getEngine()));
+                mFirebaseAnalytics.logEvent("SOLVE_ENGINE", engineB);
+                solution = result.getPath();
+                stats = result.getStats();
 
                 if (solution == null)
                     state = MAZE_NOT_SOLVED;
@@ -294,12 +493,360 @@ public class SolutionActivity extends Activity {
             Bundle b = new Bundle();
             b.putSerializable("path", solution);
             b.putSerializable("binary", croppedBinaryMaze);
+            b.putSerializable("stats", stats);
             Message completeMessage = mHandler.obtainMessage(state, b);
-            Log.i(TAG, "run: Image: " + image);
             completeMessage.sendToTarget();
+
+            // Readies the distance field, then the edit mode with a search that later edits only
+            // have to repair. The field comes first so no edit can make it stale on the way.
+            // Posters get neither, since both are flat over every pixel, which is what the
+            // clusters were there to avoid.
+            if (state == MAZE_SOLVED && !poster) {
+                DistanceField field = mySol.createDistanceField();
+                if (field.compute(replanControl))
+                    mHandler.obtainMessage(FIELD_READY, field).sendToTarget();
+                Log.i(TAG, "run: Distance field stats: " + field.getStats());
+
+                DStarLite editSearch = mySol.createReplanner();
+                editSearch.setSolveControl(replanControl);
+                editSearch.solve();
+                if (!replanControl.isCancelled())
+                    mHandler.obtainMessage(EDITOR_READY, editSearch).sendToTarget();
+            }
+        }
+    }
+
+    /**
+     * Turns touches on the solved maze into edits while the edit mode is on. A touch that starts
+     * in a corridor paints a wall and one that starts on a wall erases it. When the finger lifts,
+     * the replanner repairs the solution.
+     */
+    private class MazeEditListener implements View.OnTouchListener {
+        private boolean painting;
+        private int lastI, lastJ;
+        private boolean changed;
+
+        @Override
+        public boolean onTouch(View view, MotionEvent event) {
+            if (!editing || editMaze == null)
+                return false;
+
+            int[] cell = toMazeCell(event.getX(), event.getY());
+            int i = cell[0], j = cell[1];
+            MazeGrid maze = editMaze;
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    changed = false;
+                    painting = !inMaze(maze, i, j) || !maze.isWall(i, j);
+                    lastI = i;
+                    lastJ = j;
+                    brush(i, j);
+                    break;
+                case MotionEvent.ACTION_MOVE:
+                    // Fills in the stroke between touch events so a quick swipe leaves no gaps
+                    int steps = Math.max(Math.abs(i - lastI), Math.abs(j - lastJ));
+                    for (int k = 1; k <= steps; k++)
+                        brush(lastI + (i - lastI) * k / steps, lastJ + (j - lastJ) * k / steps);
+                    lastI = i;
+                    lastJ = j;
+                    break;
+                case MotionEvent.ACTION_UP:
+                    if (changed)
+                        replan(false);
+                    break;
+            }
+            return true;
+        }
+
+        // Paints or erases a square of walls, leaving the entrances open
+        private void brush(int i, int j) {
+            MazeGrid maze = editMaze;
+            for (int r = i - BRUSH_RADIUS; r <= i + BRUSH_RADIUS; r++) {
+                for (int c = j - BRUSH_RADIUS; c <= j + BRUSH_RADIUS; c++) {
+                    int index = r * maze.getWidth() + c;
+                    if (!inMaze(maze, r, c) || index == editStart || index == editEnd)
+                        continue;
+                    if (maze.isWall(r, c) != painting) {
+                        maze.setWall(r, c, painting);
+                        replanWorker.setWall(r, c, painting);
+                        edits.setWall(r, c, true);
+                        changed = true;
+                        dropDistanceField();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the start or the end as its Pointer is dragged. Every time the pointer crosses into a
+     * new corridor pixel, the replan thread is asked for a quick preview of the path, and the moves
+     * made while it's busy are merged into its next repair. When the drag ends the pointer snaps
+     * to the entrance and the path is drawn properly.
+     *
+     * While the distance field still holds, the end's path is read straight out of it instead, and
+     * the replanner is only told where the end went once the drag is over.
+     */
+    private class PointerMoveListener implements Pointer.OnMoveListener {
+        private boolean moved;
+        private int current = -1; // Where the end has been dragged to, while the field answers for it
+
+        @Override
+        public void onMove(Pointer pointer, float x, float y, boolean done) {
+            if (editMaze == null)
+                return;
+
+            boolean isStart = pointer == startPointer;
+            boolean fromField = !isStart && distanceField != null && distanceField.getStart() == editStart;
+            MazeGrid maze = editMaze;
+            int width = maze.getWidth();
+            int[] cell = toMazeCell(x, y);
+            int i = cell[0], j = cell[1], index = i * width + j;
+            int entrance = isStart ? editStart : current != -1 ? current : editEnd;
+            int other = isStart ? editEnd : editStart;
+
+            if (inMaze(maze, i, j) && !maze.isWall(i, j) && index != entrance && index != other) {
+                moved = true;
+                if (fromField) {
+                    current = index;
+                    sendPath(distanceField.pathTo(i, j), !done);
+                } else {
+                    if (isStart) {
+                        editStart = index;
+                        replanWorker.moveStart(i, j);
+                        dropDistanceField();
+                    } else {
+                        editEnd = index;
+                        replanWorker.moveEnd(i, j);
+                    }
+                    replan(!done);
+                }
+            } else if (done && moved) {
+                if (fromField && current != -1)
+                    sendPath(distanceField.pathTo(current / width, current % width), false);
+                else
+                    replan(false);
+            }
+
+            if (done) {
+                // The replanner catches up on the next edit or drag of the start
+                if (current != -1) {
+                    editEnd = current;
+                    replanWorker.moveEnd(current / width, current % width);
+                }
+                moved = false;
+                current = -1;
+                placePointer(pointer, isStart ? editStart : editEnd);
+            }
         }
     }
 
+    /**
+     * Repairs the solution after an edit or a moved entrance on the replan thread, which sends it
+     * to mHandler to be drawn.
+     * @param preview Whether to draw a quick preview instead of the full solution
+     */
+    private void replan(boolean preview) {
+        replanWorker.request(preview, fieldVersion);
+    }
+
+    /**
+     * Sends a path on the edited maze to mHandler to be drawn. Safe to call from any thread.
+     * @param preview Whether to draw a quick preview instead of the full solution
+     */
+    private void sendPath(PackedPath path, boolean preview) {
+        Bundle b = new Bundle();
+        b.putSerializable("path", path);
+        b.putBoolean("preview", preview);
+        mHandler.obtainMessage(MAZE_EDITED, b).sendToTarget();
+    }
+
+    /**
+     * Repairs the solution on a thread of its own, so no search ever holds up the touch events.
+     * Once the replanner is handed over, the UI thread only records its edits and moved entrances
+     * here and asks for a repair. A repair applies everything recorded so far and solves once, so
+     * the requests that arrive while one is running are merged into the next one instead of each
+     * getting a search.
+     *
+     * Once a drag or stroke is over and nothing else is waiting, the distance field is rebuilt if
+     * the start or the walls changed, so dragging the end goes back to reading paths out of it.
+     */
+    private class ReplanWorker implements Runnable {
+        private static final int SET_WALL = 0, CLEAR_WALL = 1, MOVE_START = 2, MOVE_END = 3;
+
+        private final List<int[]> pending = new ArrayList<>(); // {operation, i, j}, guarded by itself
+        private boolean queued;  // Whether a repair is waiting to start
+        private boolean preview; // What the waiting repair should draw
+        private int version;     // The UI's fieldVersion when the waiting repair was asked for
+        private SolveControl fieldControl = new SolveControl(); // Stops a rebuild when a repair is asked for
+        private boolean fieldStale; // Only touched on the replan thread
+
+        void setWall(int i, int j, boolean wall) {
+            record(wall ? SET_WALL : CLEAR_WALL, i, j);
+        }
+
+        void moveStart(int i, int j) {
+            record(MOVE_START, i, j);
+        }
+
+        void moveEnd(int i, int j) {
+            record(MOVE_END, i, j);
+        }
+
+        /**
+         * Queues a repair, unless one that hasn't started yet will pick this request up anyway.
+         * @param version The UI's fieldVersion, which every change recorded so far is part of
+         */
+        void request(boolean preview, int version) {
+            synchronized (pending) {
+                this.preview = preview;
+                this.version = version;
+                fieldControl.cancel();
+                if (queued)
+                    return;
+                queued = true;
+            }
+            replanExecutor.execute(this);
+        }
+
+        // Stops a rebuild of the field, for when the activity goes away
+        void cancel() {
+            synchronized (pending) {
+                fieldControl.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            int[][] operations;
+            boolean preview;
+            int version;
+            SolveControl fieldControl;
+            synchronized (pending) {
+                operations = pending.toArray(new int[pending.size()][]);
+                pending.clear();
+                preview = this.preview;
+                version = this.version;
+                queued = false;
+                fieldControl = this.fieldControl = new SolveControl();
+            }
+
+            for (int[] operation : operations) {
+                fieldStale |= operation[0] != MOVE_END;
+                switch (operation[0]) {
+                    case SET_WALL:
+                    case CLEAR_WALL:
+                        replanner.setWall(operation[1], operation[2], operation[0] == SET_WALL);
+                        break;
+                    case MOVE_START:
+                        replanner.moveStart(operation[1], operation[2]);
+                        break;
+                    default:
+                        replanner.moveEnd(operation[1], operation[2]);
+                        break;
+                }
+            }
+
+            long startTime = System.nanoTime();
+            replanner.solve();
+            if (replanControl.isCancelled())
+                return;
+            PackedPath path = replanner.getPackedPath();
+            Log.i(TAG, "run: Repaired in " + (System.nanoTime() - startTime) / 1000000 + " ms, "
+                    + replanner.getStats());
+            sendPath(path, preview);
+
+            if (!preview && fieldStale)
+                rebuildField(version, fieldControl);
+        }
+
+        // Computes a field from the replanner's start over a copy of its maze, which it goes on editing
+        private void rebuildField(int version, SolveControl control) {
+            int start = replanner.getStart(), width = replanner.getMaze().getWidth();
+            DistanceField field = new DistanceField(new MazeGrid(replanner.getMaze()), start / width, start % width);
+            if (!field.compute(control))
+                return; // Left stale for the repair that stopped it
+            fieldStale = false;
+            Log.i(TAG, "rebuildField: Distance field stats: " + field.getStats());
+            mHandler.obtainMessage(FIELD_READY, version, 0, field).sendToTarget();
+        }
+
+        private void record(int operation, int i, int j) {
+            synchronized (pending) {
+                // A drag only needs the entrance's latest place, and moving the root is a restart
+                int last = pending.size() - 1;
+                if (operation >= MOVE_START && last >= 0 && pending.get(last)[0] == operation)
+                    pending.set(last, new int[]{operation, i, j});
+                else
+                    pending.add(new int[]{operation, i, j});
+            }
+        }
+    }
+
+    // Forgets the distance field once the start or the walls change under it
+    private void dropDistanceField() {
+        fieldVersion++;
+        if (distanceField == null)
+            return;
+        distanceField = null;
+        showHeat(false);
+        heatButton.setVisibility(View.INVISIBLE);
+    }
+
+    private void showHeat(boolean show) {
+        showingHeat = show;
+        heatButton.setText(show ? R.string.hide_heat_map : R.string.heat_map);
+    }
+
+    private boolean inMaze(MazeGrid maze, int i, int j) {
+        return i >= 0 && i < maze.getHeight() && j >= 0 && j < maze.getWidth();
+    }
+
+    /**
+     * Centers a Pointer on a pixel of the binary maze.
+     * @param pointer The pointer to move
+     * @param cell The pixel's index, i * width + j
+     */
+    private void placePointer(Pointer pointer, int cell) {
+        int width = editMaze.getWidth();
+        float[] point = toViewPoint(cell / width, cell % width);
+        pointer.setLocation(point[0], point[1]);
+    }
+
+    /**
+     * Maps the center of a pixel of the binary maze to a point on the image view, the reverse of
+     * toMazeCell.
+     * @param i The row
+     * @param j The column
+     * @return The x and y coordinates on the view
+     */
+    private float[] toViewPoint(int i, int j) {
+        float[] point = {
+                (mazeCorner.x + (j + 0.5f) * SOLVING_SCALE_FACTOR) / VIEW_SCALE_FACTOR,
+                (mazeCorner.y + (i + 0.5f) * SOLVING_SCALE_FACTOR) / VIEW_SCALE_FACTOR
+        };
+        imageView.getImageMatrix().mapPoints(point);
+        return point;
+    }
+
+    /**
+     * Maps a point on the image view to a pixel of the binary maze, undoing the view's own
+     * scaling, VIEW_SCALE_FACTOR, the crop and SOLVING_SCALE_FACTOR in turn.
+     * @param x The x-coordinate of the point on the view
+     * @param y The y-coordinate of the point on the view
+     * @return The row and column, which may be outside the maze
+     */
+    private int[] toMazeCell(float x, float y) {
+        Matrix inverse = new Matrix();
+        imageView.getImageMatrix().invert(inverse);
+        float[] point = {x, y};
+        inverse.mapPoints(point);
+
+        int j = (int) Math.floor((point[0] * VIEW_SCALE_FACTOR - mazeCorner.x) / SOLVING_SCALE_FACTOR);
+        int i = (int) Math.floor((point[1] * VIEW_SCALE_FACTOR - mazeCorner.y) / SOLVING_SCALE_FACTOR);
+        return new int[]{i, j};
+    }
+
     /**
      * Hides the loading icon and text.
      */
@@ -331,23 +878,41 @@ public class SolutionActivity extends Activity {
     /**
      * Locates the maze in the selected region, crops it and downscales it.
      * @param corners The four corners that define the user's selected region
-     * @param image The image containing the maze
+     * @param data The compressed bytes of the image containing the maze
      * @return The cropped and binary-ized maze
      */
-    private Mat getCroppedMaze(int[][] corners, Bitmap image) {
-        // Converts the bitmap to an OpenCV matrix
+    private Mat getCroppedMaze(int[][] corners, byte[] data) {
+        // Decodes straight to 8 bit gray at the solving scale, so the JPEG decoder does the
+        // downscale and there's no color to convert. Everything until the maze is found is
+        // measured in these decoded pixels.
+        Mat gray = CVUtils.decodeGrayscale(data, SOLVING_SCALE_FACTOR);
+        if (gray.width() > gray.height())
+            Core.rotate(gray, gray, Core.ROTATE_90_CLOCKWISE); // Matches the rotated bitmap
+        int[][] scaled = new int[corners.length][];
+        for (int k = 0; k < corners.length; k++)
+            scaled[k] = new int[]{corners[k][0] / SOLVING_SCALE_FACTOR, corners[k][1] / SOLVING_SCALE_FACTOR};
+
+        // Only the selected region, with enough around it for the filters, is filtered, so a small
+        // maze in a big photo doesn't filter the whole photo
+        Rect roi = CVUtils.paddedBounds(scaled, ROI_PADDING / SOLVING_SCALE_FACTOR, gray.width(), gray.height());
+        Log.i(TAG, "getCroppedMaze: Preprocessing " + roi.width + "x" + roi.height + " of "
+                + gray.width() + "x" + gray.height());
+
+        // Blur and threshold, at half the sizes used on the full size photo
+        Mat section = gray.submat(roi);
         Mat img_matrix = new Mat();
-        Bitmap bmp32 = image.copy(Bitmap.Config.ARGB_8888, true);
-        Utils.bitmapToMat(bmp32, img_matrix);
-        bmp32.recycle();
-
-        // Convert to gray, blur, and threshold.
-        Imgproc.cvtColor(img_matrix, img_matrix, Imgproc.COLOR_RGB2GRAY);
-        Imgproc.GaussianBlur(img_matrix, img_matrix, new Size(11, 11), 0);
-        Imgproc.adaptiveThreshold(img_matrix, img_matrix, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY, 55, 5);
+        Imgproc.GaussianBlur(section, img_matrix, new Size(5, 5), 0);
+        section.release();
+        gray.release();
+        Imgproc.adaptiveThreshold(img_matrix, img_matrix, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY, 27, 5);
 
         // Crops the image AFTER the thresholding to avoid those border lines
-        img_matrix = CVUtils.cropQuadrilateral(img_matrix, corners);
+        int[][] roiCorners = new int[scaled.length][];
+        for (int k = 0; k < scaled.length; k++)
+            roiCorners[k] = new int[]{scaled[k][0] - roi.x, scaled[k][1] - roi.y};
+        Mat thresholded = img_matrix;
+        img_matrix = CVUtils.cropQuadrilateral(thresholded, roiCorners);
+        thresholded.release();
 
         // Gets the two contours with the longest perimeter. Since mazes can have a line drawn
         // through them that splits them in half (the solution), the maze is actually two separate
@@ -364,7 +929,7 @@ public class SolutionActivity extends Activity {
             Rect combined = CVUtils.combineRects(rects.get(0), rects.get(1));
 
             // Contracts the bounding box to help eliminate whitespace on the edge of the maze
-            final int contract_px = 3;
+            final int contract_px = 2; // 3 or 4 pixels of the full size photo
             combined.x += contract_px;
             combined.y += contract_px;
             combined.width -= contract_px*2;
@@ -382,8 +947,8 @@ public class SolutionActivity extends Activity {
 
             // Find the lowest x and y coords because that will define the rect that the first pass
             // cropped maze was inside of
-            int lowestX = corners[0][0], lowestY = corners[0][1];
-            for (int[] p : corners) {
+            int lowestX = scaled[0][0], lowestY = scaled[0][1];
+            for (int[] p : scaled) {
                 if (p[0] < lowestX)
                     lowestX = p[0];
                 if (p[1] < lowestY)
@@ -391,17 +956,17 @@ public class SolutionActivity extends Activity {
             }
 
             // The point in which the newly cropped maze lies in the original image.
-            mazeCorner = new Point(combined.x + lowestX, combined.y + lowestY);
+            mazeCorner = new Point((combined.x + lowestX) * SOLVING_SCALE_FACTOR,
+                    (combined.y + lowestY) * SOLVING_SCALE_FACTOR);
         }
 
-        // Resize the image
-        Size dstSize = new Size(img_matrix.width() / SOLVING_SCALE_FACTOR, img_matrix.height() / SOLVING_SCALE_FACTOR);
-        Mat dst = new Mat();
-        Imgproc.resize(img_matrix, dst, dstSize, 1, 1, Imgproc.INTER_AREA);
-
+        // The image was decoded at the solving scale, so the maze only has to be copied out of
+        // the crop it's a view into
+        Mat dst = img_matrix.clone();
+        img_matrix.release();
         img_matrix = dst;
 
-        Log.i(TAG, "getCroppedMaze: Scaled image size: " + dstSize);
+        Log.i(TAG, "getCroppedMaze: Scaled image size: " + img_matrix.size());
 
         Imgproc.adaptiveThreshold(img_matrix, img_matrix, 255, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY, 25, 30);
 
@@ -411,30 +976,34 @@ public class SolutionActivity extends Activity {
 
     /**
      * Overlays the solution on top of the original maze image.
-     * @param path The solution of the maze
-     * @param mazetrix The binary array representing the maze
-     * @param image The original image containing the maze
+     * @param path The solution of the maze, or null to draw only the edits
+     * @param mazetrix The binary grid representing the maze
+     * @param edits The pixels the user has painted or erased, or null if there are none
+     * @param image The image containing the maze, at view size
      */
-    private void drawSolution(Stack<int[]> path, int[][] mazetrix, Bitmap image) {
-        // Sets the value of the solution pixels to 2
-        for (int[] coords : path) {
-            mazetrix[coords[0]][coords[1]] = 2;
+    private void drawSolution(PackedPath path, MazeGrid mazetrix, MazeGrid edits, Bitmap image) {
+        final int height = mazetrix.getHeight(), width = mazetrix.getWidth();
+
+        // Marks the solution pixels in a grid of their own
+        MazeGrid solutionPix = new MazeGrid(width, height);
+        for (int k = 0; path != null && k < path.length(); k++) {
+            solutionPix.setWall(path.getI(k), path.getJ(k), true);
         }
 
-        int[][] pixOut = new int[mazetrix.length][mazetrix[0].length];
+        int[][] pixOut = new int[height][width];
 
         // The radius that the path "puffs" out in
-        final int bloomAmount = (int) ((mazetrix.length * mazetrix[0].length) * Math.pow(SOLVING_SCALE_FACTOR, 2) / 50000);
+        final int bloomAmount = (int) ((height * width) * Math.pow(SOLVING_SCALE_FACTOR, 2) / 50000);
         Log.i(TAG, "drawSolution: bloom: " + bloomAmount);
 
         // Colors the solution
         final int opaque = (int) ((long) 0xff << 24) | 0xff << 16; // Encodes it in hexadecimal sRGB color space
         final int translucent = (0xff) << 16;
-        for (int i = 0; i < mazetrix.length; i++) {
-            for (int j = 0; j < mazetrix[0].length; j++) {
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
 
                 // If pixel is part of the solution, make the color opaque red, otherwise transparent
-                if (mazetrix[i][j] == 2) {
+                if (solutionPix.isWall(i, j)) {
                     pixOut[i][j] = opaque;
 
                     // Draw the bloom
@@ -442,47 +1011,102 @@ public class SolutionActivity extends Activity {
                     for (int x = -bloomAmount; x <= bloomAmount; x++) {
                         y = (int) Math.round(Math.sqrt(bloomAmount * bloomAmount - x * x));
                         for (int k = -y; k <= y; k++) {
-                            if (0 <= i + k && i + k < mazetrix.length && 0 <= j + x && j + x < mazetrix[0].length)
-                                if (mazetrix[i + k][j + x] == 0)
-                                    pixOut[i + k][j + x] = opaque;
-                                else if (mazetrix[i + k][j + x] == 1)
+                            if (0 <= i + k && i + k < height && 0 <= j + x && j + x < width)
+                                if (mazetrix.isWall(i + k, j + x))
                                     break;
+                                else if (!solutionPix.isWall(i + k, j + x))
+                                    pixOut[i + k][j + x] = opaque;
                         }
                     }
+                } else if (edits != null && edits.isWall(i, j)) {
+                    // Shows what the user painted and erased
+                    pixOut[i][j] = mazetrix.isWall(i, j) ? Color.BLACK : Color.WHITE;
                 } else {
                     pixOut[i][j] = translucent;
                 }
             }
         }
 
-        // Create a bitmap out of the solution and scale it according to SCALE_FACTOR
-        int[] pixels = get1DArray(pixOut);
-        Bitmap solution = Bitmap.createBitmap(pixels, mazetrix[0].length, mazetrix.length, Bitmap.Config.ARGB_8888);
-        solution = Bitmap.createScaledBitmap(
-                solution,
-                solution.getWidth() * SOLVING_SCALE_FACTOR,
-                solution.getHeight() * SOLVING_SCALE_FACTOR,
-                true
-        );
+        showOverlay(get1DArray(pixOut), width, height, image);
+    }
 
-        // Overlay the image
-        Bitmap out = putOverlay(image, solution, mazeCorner.x, mazeCorner.y);
+    /**
+     * Colors every pixel the start can reach by how far away it is, from green nearby to red at
+     * the farthest, and overlays that on the original image.
+     * @param field The computed distances from the start
+     * @param mazetrix The binary grid the distances were computed on
+     * @param image The image containing the maze, at view size
+     */
+    private void drawHeatMap(DistanceField field, MazeGrid mazetrix, Bitmap image) {
+        final int height = mazetrix.getHeight(), width = mazetrix.getWidth();
+        final float max = Math.max(field.getMaxDistance(), 1);
+
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                int distance = field.getDistance(i, j);
+                if (distance != DistanceField.UNREACHABLE) {
+                    float far = distance / max;
+                    pixels[i * width + j] = Color.argb(200, (int) (255 * far), (int) (255 * (1 - far)), 0);
+                }
+            }
+        }
 
-        Log.i(TAG, "drawSolution: Image: " + image);
-        Log.i(TAG, "drawSolution: Solution: " + solution);
+        showOverlay(pixels, width, height, image);
+    }
 
-        solution.recycle();
-        image.recycle();
-        out = Bitmap.createScaledBitmap(
-                out,
-                out.getWidth() / VIEW_SCALE_FACTOR,
-                out.getHeight() / VIEW_SCALE_FACTOR,
-                true
-        );
+    /**
+     * Scales an overlay the size of the binary maze to the image at view size, lays it over the
+     * maze and shows the result.
+     * @param pixels The overlay's colors, row by row
+     * @param width The width of the binary maze
+     * @param height The height of the binary maze
+     * @param image The image containing the maze, at view size
+     */
+    private void showOverlay(int[] pixels, int width, int height, Bitmap image) {
+        // Create a bitmap out of the solution, which is drawn scaled from maze pixels to view size
+        Bitmap solution = Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+        Bitmap out = putOverlay(image, solution,
+                (float) mazeCorner.x / VIEW_SCALE_FACTOR,
+                (float) mazeCorner.y / VIEW_SCALE_FACTOR,
+                (float) SOLVING_SCALE_FACTOR / VIEW_SCALE_FACTOR);
+
+        Log.i(TAG, "showOverlay: Image: " + image);
+        Log.i(TAG, "showOverlay: Solution: " + solution);
 
+        solution.recycle();
         imageView.setImageBitmap(out);
 
-        Log.i(TAG, "drawSolution: Out img dims: " + out.getWidth() + ", " + out.getHeight());
+        Log.i(TAG, "showOverlay: Out img dims: " + out.getWidth() + ", " + out.getHeight());
+    }
+
+    /**
+     * Draws the path as a thin line over the image at view size. It skips the bloom and the
+     * per-pixel overlay of drawSolution, so it keeps up with a dragged Pointer.
+     * @param path The path, or null to draw the image alone
+     * @param base The image scaled down by VIEW_SCALE_FACTOR, which isn't changed
+     */
+    private void drawPreview(PackedPath path, Bitmap base) {
+        Bitmap out = base.copy(Bitmap.Config.ARGB_8888, true);
+        if (path != null) {
+            Path line = new Path();
+            for (int k = 0; k < path.length(); k++) {
+                float x = (mazeCorner.x + (path.getJ(k) + 0.5f) * SOLVING_SCALE_FACTOR) / VIEW_SCALE_FACTOR;
+                float y = (mazeCorner.y + (path.getI(k) + 0.5f) * SOLVING_SCALE_FACTOR) / VIEW_SCALE_FACTOR;
+                if (k == 0)
+                    line.moveTo(x, y);
+                else
+                    line.lineTo(x, y);
+            }
+
+            Paint p = new Paint();
+            p.setColor(Color.RED);
+            p.setStyle(Paint.Style.STROKE);
+            p.setStrokeWidth(3);
+            p.setAntiAlias(true);
+            new Canvas(out).drawPath(line, p);
+        }
+        imageView.setImageBitmap(out);
     }
 
     /**
@@ -491,18 +1115,20 @@ public class SolutionActivity extends Activity {
      * @param overlay The overlaid image
      * @param x The x-coordinate of where the top left corner of overlay is placed onto base
      * @param y The y-coordinate of where the top left corner of overlay is placed onto base
+     * @param scale The size of an overlay pixel on base
      * @return The bitmap of the overlay imaged on top of the base
      */
-    private Bitmap putOverlay(Bitmap base, Bitmap overlay, int x, int y) {
+    private Bitmap putOverlay(Bitmap base, Bitmap overlay, float x, float y, float scale) {
         // Copy the bmp to ensure that it's mutable
         Bitmap baseCpy = base.copy(Bitmap.Config.ARGB_8888, true);
 
-        Paint p = new Paint();
-        p.setColor(Color.RED);
+        Matrix placement = new Matrix();
+        placement.postScale(scale, scale);
+        placement.postTranslate(x, y);
 
         // Draw the solution
         Canvas canvas = new Canvas(baseCpy);
-        canvas.drawBitmap(overlay, x, y, null);
+        canvas.drawBitmap(overlay, placement, new Paint(Paint.FILTER_BITMAP_FLAG));
 
         return baseCpy;
     }
@@ -525,6 +1151,27 @@ public class SolutionActivity extends Activity {
         return ret;
     }
 
+    /**
+     * Reads the whole of a content URI, which for a photo is its compressed bytes.
+     * @param uri The URI of the image
+     * @return The bytes
+     * @throws IOException If the URI can't be read
+     */
+    private byte[] readBytes(Uri uri) throws IOException {
+        InputStream in = getContentResolver().openInputStream(uri);
+        if (in == null)
+            throw new IOException("Couldn't open " + uri);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64 * 1024];
+            for (int n; (n = in.read(buffer)) != -1; )
+                out.write(buffer, 0, n);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
     /**
      * Rotates a bitmap image by a specified angle.
      * @param source The bitmap to be rotated
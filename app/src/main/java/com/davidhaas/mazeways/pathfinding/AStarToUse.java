@@ -3,18 +3,23 @@ package com.davidhaas.mazeways.pathfinding;
 import android.util.Log;
 
 import java.util.*;
-public class AStarToUse {
-    private final int DIAGONAL_COST = 14;
-    private final int V_H_COST = 10;
+public class AStarToUse implements PathSolver {
+    private final int DIAGONAL_COST = Heuristics.DIAGONAL_COST;
+    private final int V_H_COST = Heuristics.V_H_COST;
     private Cell[][] grid;
     private PriorityQueue<Cell> open;
     private boolean[][] closed;
     private int startI, startJ;
     private int endI, endJ;
+    private double weight = 1;
+    private SolveControl control = new SolveControl();
+    private final SolveStats stats = new SolveStats();
+    private int heapOperations;
 
 
-    public AStarToUse(int width, int height,int[][] blocked,
+    public AStarToUse(MazeGrid maze,
         int startI, int startJ,int endI,int endJ) {
+        int width = maze.getWidth(), height = maze.getHeight();
         this.grid = new Cell[height][width];
         this.closed = new boolean[height][width];
         open = new PriorityQueue<>(2, new Comparator<Object>() {
@@ -24,111 +29,136 @@ public class AStarToUse {
                 Cell c1 = (Cell)o1;
                 Cell c2 = (Cell)o2;
 
+                // Equal final costs go to the cell that is further from the start
                 return c1.finalCost<c2.finalCost?-1:
-                        c1.finalCost>c2.finalCost?1:0;
+                        c1.finalCost>c2.finalCost?1:
+                        c1.gCost>c2.gCost?-1:
+                        c1.gCost<c2.gCost?1:0;
             }
         });
         
         setStartCell(startI, startJ);
         setEndCell(endI, endJ);
+        // Walls are left null so no Cell is allocated for them
         for(int i=0;i<height;++i){
             for(int j=0;j<width;++j){
+                if(maze.isWall(i, j)) continue;
                 grid[i][j] = new Cell(i, j);
-                grid[i][j].heuristicCost = Math.abs(i-endI)+Math.abs(j-endJ);
+                grid[i][j].heuristicCost = Heuristics.octile(Math.abs(i-endI), Math.abs(j-endJ));
             }
          }
         
-        for(int i=0;i<blocked.length;++i){
-            setBlocked(blocked[i][0], blocked[i][1]);
-        }
-         grid[startI][startJ].finalCost = 0;
+        if(grid[startI][startJ] != null)
+            grid[startI][startJ].gCost = 0;
 
     }
 
 
+    @Override
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    @Override
+    public void setWeight(double weight) {
+        Heuristics.checkWeight(weight);
+        this.weight = weight;
+    }
+
+    @Override
     public void solve() {
      // add the start location to open list.
 
+        if (grid[startI][startJ] == null)
+            return;
+        grid[startI][startJ].finalCost = Heuristics.weighted(grid[startI][startJ].heuristicCost, weight);
         open.add(grid[startI][startJ]);
+        heapOperations++;
+        stats.generated(open.size());
 
         Cell current;
 
         while (true) {
             current = open.poll();
+            heapOperations++;
 
             //Log.i("AStarToUse", "solve: " + current);
 
             if (current == null)
                 break;
             closed[current.i][current.j] = true;
+            stats.closed++;
+            stats.expanded++;
 
             if (current.equals(grid[endI][endJ])) {
                 return;
             }
+            if (control.checkpoint(stats.expanded, current.finalCost))
+                return;
 
             Cell t;
             if (current.i - 1 >= 0) {
                 t = grid[current.i - 1][current.j];
-                checkAndUpdateCost(current, t, current.finalCost + V_H_COST);
+                checkAndUpdateCost(current, t, current.gCost + V_H_COST);
 
                 if (current.j - 1 >= 0) {
                     t = grid[current.i - 1][current.j - 1];
-                    checkAndUpdateCost(current, t, current.finalCost
+                    checkAndUpdateCost(current, t, current.gCost
                         + DIAGONAL_COST);
                 }
 
                 if (current.j + 1 < grid[0].length) {
                     t = grid[current.i - 1][current.j + 1];
-                    checkAndUpdateCost(current, t, current.finalCost
+                    checkAndUpdateCost(current, t, current.gCost
                         + DIAGONAL_COST);
                 }
             }
 
             if (current.j - 1 >= 0) {
                 t = grid[current.i][current.j - 1];
-                checkAndUpdateCost(current, t, current.finalCost + V_H_COST);
+                checkAndUpdateCost(current, t, current.gCost + V_H_COST);
             }
 
             if (current.j + 1 < grid[0].length) {
                 t = grid[current.i][current.j + 1];
-                checkAndUpdateCost(current, t, current.finalCost + V_H_COST);
+                checkAndUpdateCost(current, t, current.gCost + V_H_COST);
             }
 
             if (current.i + 1 < grid.length) {
                 t = grid[current.i + 1][current.j];
-                checkAndUpdateCost(current, t, current.finalCost + V_H_COST);
+                checkAndUpdateCost(current, t, current.gCost + V_H_COST);
 
                 if (current.j - 1 >= 0) {
                     t = grid[current.i + 1][current.j - 1];
-                    checkAndUpdateCost(current, t, current.finalCost
+                    checkAndUpdateCost(current, t, current.gCost
                         + DIAGONAL_COST);
                 }
 
                 if (current.j + 1 < grid[0].length) {
                     t = grid[current.i + 1][current.j + 1];
-                    checkAndUpdateCost(current, t, current.finalCost
+                    checkAndUpdateCost(current, t, current.gCost
                         + DIAGONAL_COST);
                 }
             }
         }
     }
     
-    public Stack<int[]> getIntPath(){
-        Stack<Cell> path = getPath();
-        if(path==null) {return null;}
-        Stack<Cell> fliped = new Stack<Cell>();
-        Stack<int[]> output = new Stack<int[]>();
-        while(path.size()>0) {
-            fliped.push(path.pop());
-        }
-        while(fliped.size()>0) {
-            Cell temp = fliped.pop();
-            int[] ij = new int[]{temp.getI(),temp.getJ()};
-            output.push(ij);
-        }
-        return output;
+    @Override
+    public PackedPath getPackedPath(){
+        if(!closed[endI][endJ]) return null;
+
+        // Counts the cells first so the array can be filled in from the end without a reversal
+        int length = 1;
+        for(Cell c = grid[endI][endJ]; c.getParent()!=null; c = c.getParent())
+            length++;
+        int width = grid[0].length;
+        int[] cells = new int[length];
+        int k = length;
+        for(Cell c = grid[endI][endJ]; c!=null; c = c.getParent())
+            cells[--k] = c.getI()*width + c.getJ();
+        return new PackedPath(cells, width);
     }
-    
+
     public Stack<Cell> getPath(){
         Stack<Cell> path = new Stack<Cell>();
         if(closed[endI][endJ]){
@@ -144,6 +174,36 @@ public class AStarToUse {
         }
     }
     
+    @Override
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return The number of cells taken off the open list.
+     */
+    @Override
+    public int getExpandedCount() {
+        return stats.expanded;
+    }
+
+    /**
+     * @return The number of add, poll and contains calls on the open list.
+     */
+    @Override
+    public int getHeapOperations() {
+        return heapOperations;
+    }
+
+    /**
+     * @return The approximate number of bytes held by the grid of Cells and the closed set.
+     */
+    @Override
+    public long getAllocatedBytes() {
+        // A Cell is a 12 byte header, five ints and a reference, padded to 40; the grid holds a reference to it
+        return (long) grid.length * grid[0].length * (40 + 4 + 1);
+    }
+
     public void setBlocked(int i, int j) {
         grid[i][j] = null;
     }
@@ -164,15 +224,23 @@ public class AStarToUse {
             return;// checks if the cell is blocked or if it has already been
                    // checked
         }
-        int t_final_cost = t.heuristicCost + cost;// increment the final cost by
-                                                  // the input cost
         boolean inOpen = open.contains(t);// Checks if the cell is in open. It
                                           // should be.
-        if (!inOpen || t_final_cost < t.finalCost) {
-            t.finalCost = t_final_cost;
+        heapOperations++;
+        if (!inOpen || cost < t.gCost) {
+            // The queue only orders a cell when it's added, so it has to come out to be updated
+            if (inOpen) {
+                open.remove(t);
+                heapOperations++;
+                stats.decreaseKeys++;
+            }
+            t.gCost = cost;
+            t.finalCost = Heuristics.weighted(t.heuristicCost, weight) + cost;
             t.parent = current;
+            open.add(t);
+            heapOperations++;
             if (!inOpen)
-                open.add(t);
+                stats.generated(open.size());
         }
 
     }
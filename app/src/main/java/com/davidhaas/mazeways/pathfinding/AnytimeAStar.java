@@ -0,0 +1,236 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import android.util.Log;
+
+/**
+ * Name: AnytimeAStar
+ * Purpose: Anytime repairing A* (ARA*). The first pass runs with a heavily inflated heuristic, so
+ * it finds a path quickly, and each later pass lowers the weight and carries on from the costs and
+ * open list the last one left behind instead of starting over. Every path found is handed to a
+ * listener along with the factor it may be off the optimal cost by, so the app can show it while
+ * the search keeps improving it. A pass only re-expands the cells whose cost went down, which are
+ * kept on an inconsistent list until the next pass puts them back on the open list.
+ *
+ * The search ends once a pass at the final weight is done or the open list can no longer beat
+ * the path, which proves it optimal at weight 1. If the SolveControl stops it earlier, the best
+ * path so far is kept.
+ */
+public class AnytimeAStar implements PathSolver {
+    private static final String TAG = "AnytimeAStar";
+    private static final double INITIAL_WEIGHT = 3;
+    private static final double WEIGHT_STEP = 1;
+
+    // Row and column offsets of the 8 neighbours of a cell
+    private static final int[] DI = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DJ = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    /**
+     * Receives each path as it's found, on the solving thread.
+     */
+    public interface ImprovedPathListener {
+        /**
+         * @param path The best path so far
+         * @param bound The path costs at most this many times the optimal cost
+         */
+        void onImprovedPath(PackedPath path, double bound);
+    }
+
+    private final MazeGrid maze;
+    private final int width, height;
+    private final SolverContext context;
+    private final int[] gCost;
+    private final int[] parent;
+    private final OpenList open;
+    private final IntList inconsistent = new IntList(); // Closed cells whose cost went down this pass
+    private final int start, end;
+    private final int endI, endJ;
+    private double finalWeight = 1;
+    private double weight;
+    private ImprovedPathListener listener;
+    private SolveControl control = new SolveControl();
+    private final SolveStats stats = new SolveStats();
+    private PackedPath path;
+
+    public AnytimeAStar(MazeGrid maze, int startI, int startJ, int endI, int endJ) {
+        this(maze, new SolverContext(maze.getWidth() * maze.getHeight()), startI, startJ, endI, endJ);
+    }
+
+    /**
+     * @param context The state to search with, which is reset when the search starts. Its heap is
+     *                used as the open list, since the bucket queue can't take the keys of a
+     *                re-weighted open list all at once.
+     */
+    AnytimeAStar(MazeGrid maze, SolverContext context, int startI, int startJ, int endI, int endJ) {
+        this.maze = maze;
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.context = context;
+        this.gCost = context.gCost;
+        this.parent = context.parent;
+        this.open = context.heap();
+        this.start = startI * width + startJ;
+        this.end = endI * width + endJ;
+        this.endI = endI;
+        this.endJ = endJ;
+    }
+
+    public void setImprovedPathListener(ImprovedPathListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    /**
+     * @param weight The weight of the last pass, so the final path costs at most weight times the
+     *               optimal one
+     */
+    @Override
+    public void setWeight(double weight) {
+        Heuristics.checkWeight(weight);
+        this.finalWeight = weight;
+    }
+
+    @Override
+    public void solve() {
+        context.reset();
+        inconsistent.clear();
+        path = null;
+        if (maze.isWall(start / width, start % width))
+            return;
+
+        weight = Math.max(INITIAL_WEIGHT, finalWeight);
+        gCost[start] = 0;
+        parent[start] = -1;
+        context.open(start);
+        open.push(start, key(start), 0);
+        stats.generated(open.size());
+
+        while (improvePath()) {
+            if (gCost[end] == SolverContext.INFINITY)
+                return;
+            // Following the parents can give a path cheaper than the end's g-cost, so a pass that
+            // lowers that cost can still give a dearer path. Only cheaper paths are kept.
+            PackedPath found = PackedPath.fromParents(parent, end, width);
+            if (path == null || found.getCost() < path.getCost()) {
+                path = found;
+                Log.i(TAG, "solve: Path costing " + path.getCost() + " at weight " + weight
+                        + " after " + stats.expanded + " expansions");
+                if (listener != null)
+                    listener.onImprovedPath(path, weight);
+            }
+            if (weight <= finalWeight)
+                return;
+
+            weight = Math.max(weight - WEIGHT_STEP, finalWeight);
+            if (reweigh()) {
+                Log.i(TAG, "solve: Path proven optimal before the weight reached " + finalWeight);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public PackedPath getPackedPath() {
+        return path;
+    }
+
+    @Override
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public int getExpandedCount() {
+        return stats.expanded;
+    }
+
+    @Override
+    public int getHeapOperations() {
+        return open.getOperations();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return context.getAllocatedBytes() + open.getAllocatedBytes();
+    }
+
+    /**
+     * Expands cells until none left on the open list could lead to a cheaper path to the end.
+     * @return False if the SolveControl stopped the search
+     */
+    private boolean improvePath() {
+        stats.closed = 0;
+        while (!open.isEmpty() && gCost[end] > open.minKey()) {
+            int current = open.pop();
+            context.close(current);
+            stats.closed++;
+            stats.expanded++;
+            if (control.checkpoint(stats.expanded, gCost[current] + heuristic(current)))
+                return false;
+
+            int ci = current / width, cj = current - ci * width;
+            for (int k = 0; k < 8; k++) {
+                int ni = ci + DI[k], nj = cj + DJ[k];
+                if (ni < 0 || ni >= height || nj < 0 || nj >= width || maze.isWall(ni, nj))
+                    continue;
+                int cost = (DI[k] != 0 && DJ[k] != 0) ? Heuristics.DIAGONAL_COST : Heuristics.V_H_COST;
+                relax(current, ni * width + nj, gCost[current] + cost);
+            }
+        }
+        return true;
+    }
+
+    // Lowers a neighbour's cost. A cell closed in this pass waits on the inconsistent list.
+    private void relax(int current, int next, int cost) {
+        if (cost >= gCost[next])
+            return;
+        gCost[next] = cost;
+        parent[next] = current;
+
+        if (open.contains(next)) {
+            open.decreaseKey(next, key(next), cost);
+            stats.decreaseKeys++;
+        } else if (context.isClosed(next)) {
+            context.open(next); // Stamped open but kept off the heap, so it's only listed once
+            inconsistent.add(next);
+        } else if (!context.isOpen(next)) {
+            context.open(next);
+            open.push(next, key(next), cost);
+            stats.generated(open.size());
+        }
+    }
+
+    /**
+     * Starts a new pass: puts the inconsistent cells back on the open list and re-keys every open
+     * cell with the new weight. Along the way it finds the lowest unweighted f-cost left, which
+     * bounds the optimal cost from below.
+     * @return Whether that bound already proves the current path optimal
+     */
+    private boolean reweigh() {
+        while (!open.isEmpty())
+            inconsistent.add(open.pop());
+        context.nextIteration();
+
+        int lowerBound = SolverContext.INFINITY;
+        for (int k = 0; k < inconsistent.size(); k++) {
+            int cell = inconsistent.get(k);
+            lowerBound = Math.min(lowerBound, gCost[cell] + heuristic(cell));
+            context.open(cell);
+            open.push(cell, key(cell), gCost[cell]);
+        }
+        inconsistent.clear();
+        return gCost[end] <= lowerBound;
+    }
+
+    private int key(int cell) {
+        return gCost[cell] + Heuristics.weighted(heuristic(cell), weight);
+    }
+
+    private int heuristic(int cell) {
+        int i = cell / width, j = cell - i * width;
+        return Heuristics.octile(Math.abs(i - endI), Math.abs(j - endJ));
+    }
+}
@@ -2,143 +2,496 @@ package com.davidhaas.mazeways.pathfinding;
 
 import android.util.Log;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Stack;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class Asolution {
 
+    /**
+     * The A* implementations that getPath can run.
+     * CELL: the original engine that allocates a Cell object for every pixel.
+     * GRID: the engine that stores the search state in flat primitive arrays.
+     * JPS: jump point search, which only puts jump points on the open list.
+     * BIDIRECTIONAL: searches from the start and the end at once until the two meet.
+     * SKELETON: searches the graph of corridors left after thinning the maze. Much faster, but the
+     * path follows the middle of the corridors so it isn't always the shortest.
+     * MULTIRES: finds the path on a shrunken copy of the maze, then refines it at each finer scale
+     * inside a band around the coarser path.
+     * ANYTIME: finds a path quickly with an inflated heuristic, then keeps lowering the weight and
+     * improving the path until it's the shortest, reporting each path along the way.
+     * HIERARCHICAL: searches a graph of the transitions between square clusters of the maze, then
+     * only refines the clusters on the route. For very large mazes; the path can cost slightly
+     * more than the shortest one.
+     * PARALLEL: Dijkstra's algorithm by delta-stepping, splitting each band of costs between the
+     * cores when threaded. For big twisty mazes, where the heuristic doesn't save much.
+     * MULTI_GOAL: searches from every likely start to every likely finish at once and returns the
+     * shortest path between any of them, instead of only the most likely pair. Its path may not
+     * join the start and finish, so it isn't one to race in a portfolio.
+     */
+    public enum Engine {CELL, GRID, JPS, BIDIRECTIONAL, SKELETON, MULTIRES, ANYTIME, HIERARCHICAL, PARALLEL, MULTI_GOAL}
+
+    /**
+     * The open lists that the GRID, JPS, BIDIRECTIONAL and MULTI_GOAL engines can search with. CELL
+     * always uses its own PriorityQueue and ANYTIME always uses the heap.
+     * HEAP: a binary heap with decrease-key.
+     * BUCKET: a bucket queue with one bucket per integer cost.
+     */
+    public enum Queue {HEAP, BUCKET}
+
+    private static final int PYRAMID_MIN_SIZE = 64; // The smallest side of the coarsest MULTIRES level
+    private static final int CLUSTER_SIZE = 32;     // The side of a HIERARCHICAL cluster
+    private static final double CANDIDATE_RATIO = .5; // The least confidence of a MULTI_GOAL pair, relative to the best
+    private static final long PORTFOLIO_POLL_MS = 50; // How often a portfolio solve checks for cancelling
+
+    private Engine engine = Engine.GRID;
+    private Queue queue = Queue.BUCKET;
+    private double weight = 1;
+    private boolean threaded = false;
+    private Engine[] portfolio = {Engine.JPS, Engine.BIDIRECTIONAL, Engine.PARALLEL, Engine.ANYTIME};
     private int[] start = new int[2];
     private int[] finish = new int[2];
-    private int[][] grid;
+    private MazeGrid grid;
+    private MazeGrid sealedGrid; // The whole maze with everything outside the outer wall walled off
+    private MazeGrid searchGrid; // The grid with everything not connected to the start walled off
+    private boolean connected;   // Whether the start and finish are in the same component
+    private List<EntranceFinder.Candidate> entranceCandidates;
+    private int[] candidateStarts, candidateFinishes; // For MULTI_GOAL, as i * width + j
+    // Built the first time their engines run, under the lock since portfolio solves run at once
+    private CorridorGraph corridors; // For SKELETON
+    private GridPyramid pyramid;     // For MULTIRES
+    private ClusterGraph clusters;   // For HIERARCHICAL
+    private MultiResolutionSolver.CoarsePathListener coarsePathListener;
+    private AnytimeAStar.ImprovedPathListener improvedPathListener;
     private int height;
     private int width;
+    private long profilingNanos;
 
 
-    public Asolution(int[][] inImg) {
+    public Asolution(MazeGrid inImg) {
         grid = inImg;
-        rowCleanUp();
-        height = inImg.length;
-        width = inImg[0].length;
-        int[] sFarr = startFinish2(grid);
-        this.start = new int[]{sFarr[0], sFarr[1]};
-        this.finish = new int[]{sFarr[2], sFarr[3]};
+        height = inImg.getHeight();
+        width = inImg.getWidth();
+        Log.i("Asolution", "Asolution: " + width + "x" + height + " grid in " + inImg.getByteSize() + " bytes");
+        // Both ways of finding the entrances start from the same profiles of the outer wall
+        BoundaryProfiles profiles = new BoundaryProfiles(grid);
+        profilingNanos = profiles.getNanos();
+        rowCleanUp(profiles);
+
+        // Takes the best pair of connected openings, and only guesses from the outer wall's
+        // profiles if no two openings are connected
+        EntranceFinder finder = new EntranceFinder(profiles);
+        entranceCandidates = finder.getCandidates();
+        ComponentLabeler labeler;
+        if (!entranceCandidates.isEmpty()) {
+            EntranceFinder.Candidate best = entranceCandidates.get(0);
+            this.start = new int[]{best.getStartI(), best.getStartJ()};
+            this.finish = new int[]{best.getEndI(), best.getEndJ()};
+            labeler = finder.getLabeler();
+            sealedGrid = finder.getSealedMaze();
+        } else {
+            int[] sFarr = startFinish2(profiles);
+            this.start = new int[]{sFarr[0], sFarr[1]};
+            this.finish = new int[]{sFarr[2], sFarr[3]};
+            labeler = new ComponentLabeler(grid);
+            sealedGrid = grid;
+        }
+
+        // A broken maze is rejected here instead of after a search floods everything it can reach
+        connected = labeler.isSameComponent(start[0], start[1], finish[0], finish[1]);
+        if (connected) {
+            searchGrid = labeler.isolate(start[0], start[1]);
+            Log.i("Asolution", "Asolution: The start's component has "
+                    + labeler.componentSize(start[0], start[1]) + " pixels");
+            collectCandidates();
+        } else {
+            Log.i("Asolution", "Asolution: The start and finish aren't connected");
+        }
+    }
+
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    public void setQueue(Queue queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * Sets the heuristic weight of the search. A weight above 1 expands fewer cells and finds a
+     * path that costs at most weight times the optimal one.
+     * @param weight The weight, at least 1
+     */
+    public void setWeight(double weight) {
+        if (!(weight >= 1))
+            throw new IllegalArgumentException("The heuristic weight must be at least 1: " + weight);
+        this.weight = weight;
+    }
+
+    /**
+     * @param threaded Whether engines that can split their work, like BIDIRECTIONAL and PARALLEL,
+     *                 should use more than one thread
+     */
+    public void setThreaded(boolean threaded) {
+        this.threaded = threaded;
+    }
+
+    /**
+     * @param engines The engines solvePortfolio races, in the order they're started
+     */
+    public void setPortfolio(Engine... engines) {
+        if (engines.length == 0)
+            throw new IllegalArgumentException("A portfolio needs at least one engine");
+        this.portfolio = engines.clone();
+    }
+
+    /**
+     * @param listener Receives the coarse path of the MULTIRES engine before it's refined
+     */
+    public void setCoarsePathListener(MultiResolutionSolver.CoarsePathListener listener) {
+        this.coarsePathListener = listener;
+    }
+
+    /**
+     * @param listener Receives each path the ANYTIME engine finds before its final one, on the
+     *                 engine's thread. None arrive after solvePortfolio has returned.
+     */
+    public void setImprovedPathListener(AnytimeAStar.ImprovedPathListener listener) {
+        this.improvedPathListener = listener;
+    }
+
+    /**
+     * @return The connected pairs of openings in the outer wall, best first. The start and finish
+     * are the first pair, or guessed from the outer wall if the list is empty.
+     */
+    public List<EntranceFinder.Candidate> getEntranceCandidates() {
+        return entranceCandidates;
+    }
+
+    /**
+     * @return How long profiling the outer wall took, in nanoseconds, apart from the search.
+     */
+    public long getProfilingNanos() {
+        return profilingNanos;
+    }
+
+    /**
+     * Creates an incremental search for editing the maze after it's been solved. It gets its own
+     * copy of the sealed maze, so it can't route around the outside, with every component in it
+     * rather than only the start's, since erasing a wall can join components.
+     * @return The search, not solved yet
+     */
+    public DStarLite createReplanner() {
+        return new DStarLite(new MazeGrid(sealedGrid), start[0], start[1], finish[0], finish[1]);
+    }
+
+    /**
+     * Creates a field of distances from the start over the sealed maze, for answering routes to
+     * any pixel once it's computed.
+     * @return The field, not computed yet
+     */
+    public DistanceField createDistanceField() {
+        return new DistanceField(sealedGrid, start[0], start[1]);
+    }
 
+    public PackedPath getPath() {
+        return getPath(engine, queue);
     }
 
+    public PackedPath getPath(Engine engine, Queue queue) {
+        return solve(engine, queue, new SolveControl()).getPath();
+    }
 
-    public Stack<int[]> getPath() {
-        int[][] blocked = makeBlocked(grid);
-        AStarToUse myAStar = new AStarToUse(width, height, blocked, start[0], start[1], finish[0], finish[1]);
-        myAStar.solve();
-        return myAStar.getIntPath();
+    /**
+     * Solves the maze with the chosen engine and open list.
+     * @param control Cancels, time limits and watches the solve
+     */
+    public SolveResult solve(SolveControl control) {
+        return solve(engine, queue, control);
     }
 
-    private void rowCleanUp() {
-        for (int i = 0; i < grid.length; i++) {
-            boolean empty = true;
-            for (int j = 0; j < grid[0].length; j++) {
-                if (grid[i][j] == 1) {
-                    empty = false;
+    public SolveResult solve(Engine engine, Queue queue, final SolveControl control) {
+        if (!connected)
+            return new SolveResult(SolveResult.Status.NO_PATH, null, new SolveStats());
+
+        long setupStart = System.nanoTime();
+        SolverContext context = SolverContext.acquire(width * height);
+        SolverContext backwardContext = null;
+        try {
+            PathSolver solver;
+            switch (engine) {
+                case CELL:
+                    solver = new AStarToUse(searchGrid, start[0], start[1], finish[0], finish[1]);
+                    break;
+                case BIDIRECTIONAL:
+                    backwardContext = SolverContext.acquire(width * height);
+                    BidirectionalAStar bidirectional = new BidirectionalAStar(searchGrid,
+                            context, openList(context, queue), backwardContext, openList(backwardContext, queue),
+                            start[0], start[1], finish[0], finish[1]);
+                    bidirectional.setThreaded(threaded);
+                    solver = bidirectional;
+                    break;
+                case SKELETON:
+                    synchronized (this) {
+                        if (corridors == null)
+                            corridors = new CorridorGraph(searchGrid);
+                    }
+                    solver = new CorridorSolver(corridors, start[0], start[1], finish[0], finish[1]);
+                    break;
+                case MULTIRES:
+                    synchronized (this) {
+                        if (pyramid == null)
+                            pyramid = new GridPyramid(searchGrid, PYRAMID_MIN_SIZE);
+                    }
+                    MultiResolutionSolver multires = new MultiResolutionSolver(pyramid, context,
+                            start[0], start[1], finish[0], finish[1]);
+                    multires.setCoarsePathListener(coarsePathListener);
+                    solver = multires;
+                    break;
+                case HIERARCHICAL:
+                    synchronized (this) {
+                        if (clusters == null)
+                            clusters = new ClusterGraph(searchGrid, CLUSTER_SIZE);
+                    }
+                    solver = new HierarchicalSolver(clusters, start[0], start[1], finish[0], finish[1]);
+                    break;
+                case PARALLEL:
+                    solver = new DeltaStepping(searchGrid, start[0], start[1], finish[0], finish[1], threaded);
+                    break;
+                case ANYTIME:
+                    AnytimeAStar anytime = new AnytimeAStar(searchGrid, context,
+                            start[0], start[1], finish[0], finish[1]);
+                    // Paths stop being passed on once the control is cancelled, which solvePortfolio
+                    // does under the same lock before it returns, so a losing engine can't post one
+                    // after the winner
+                    final AnytimeAStar.ImprovedPathListener listener = improvedPathListener;
+                    if (listener != null) {
+                        anytime.setImprovedPathListener(new AnytimeAStar.ImprovedPathListener() {
+                            @Override
+                            public void onImprovedPath(PackedPath path, double bound) {
+                                synchronized (control) {
+                                    if (!control.isCancelled())
+                                        listener.onImprovedPath(path, bound);
+                                }
+                            }
+                        });
+                    }
+                    solver = anytime;
                     break;
+                case MULTI_GOAL:
+                    solver = new MultiGoalAStar(searchGrid, context, openList(context, queue),
+                            candidateStarts, candidateFinishes);
+                    break;
+                case JPS:
+                    solver = new JumpPointSearch(searchGrid, context, openList(context, queue),
+                            start[0], start[1], finish[0], finish[1]);
+                    break;
+                default:
+                    solver = new GridAStar(searchGrid, context, openList(context, queue),
+                            start[0], start[1], finish[0], finish[1]);
+                    break;
+            }
+            solver.setWeight(weight);
+            solver.setSolveControl(control);
+            long searchStart = System.nanoTime();
+            solver.solve();
+            long reconstructStart = System.nanoTime();
+            PackedPath path = solver.getPackedPath();
+            long end = System.nanoTime();
+
+            SolveStats stats = solver.getStats();
+            stats.setupNanos = searchStart - setupStart;
+            stats.searchNanos = reconstructStart - searchStart;
+            stats.reconstructNanos = end - reconstructStart;
+            if (path != null) {
+                stats.pathLength = path.length();
+                stats.pathCost = path.getCost();
+            }
+            Log.i("Asolution", "solve: " + engine + "/" + queue + " w=" + weight + " " + stats
+                    + ", heap ops " + solver.getHeapOperations() + ", bytes " + solver.getAllocatedBytes());
+
+            SolveResult.Status status = control.getStopReason();
+            if (status == null)
+                status = path != null ? SolveResult.Status.SOLVED : SolveResult.Status.NO_PATH;
+            return new SolveResult(status, path, stats, engine);
+        } finally {
+            // The path has been copied out, so the search state can go back to the pool
+            SolverContext.release(context);
+            if (backwardContext != null)
+                SolverContext.release(backwardContext);
+        }
+    }
+
+    /**
+     * Races the portfolio's engines on the SolverPool, at most one per core at once. The first
+     * engine to return a path that checks out wins and the others are cancelled. If none does,
+     * the cheapest path any of them stopped with is returned, such as the anytime engine's best
+     * when the time runs out.
+     * @param control Cancels and time limits the whole race, and gets the progress of every engine
+     * @return The winner's result, whose getEngine says which engine it was
+     */
+    public SolveResult solvePortfolio(SolveControl control) {
+        if (!connected)
+            return new SolveResult(SolveResult.Status.NO_PATH, null, new SolveStats());
+
+        final long startTime = System.nanoTime();
+        CompletionService<SolveResult> race = new ExecutorCompletionService<>(SolverPool.executor());
+        List<SolveControl> controls = new ArrayList<>(portfolio.length);
+        for (final Engine engine : portfolio) {
+            final SolveControl engineControl = control.share();
+            controls.add(engineControl);
+            race.submit(new Callable<SolveResult>() {
+                @Override
+                public SolveResult call() {
+                    return solve(engine, queue, engineControl);
+                }
+            });
+        }
+
+        SolveResult winner = null, best = null;
+        try {
+            for (int finished = 0; finished < portfolio.length && winner == null; ) {
+                if (control.isCancelled())
+                    return new SolveResult(SolveResult.Status.CANCELLED, null, new SolveStats());
+                Future<SolveResult> next = race.poll(PORTFOLIO_POLL_MS, TimeUnit.MILLISECONDS);
+                if (next == null)
+                    continue;
+                finished++;
+
+                SolveResult result;
+                try {
+                    result = next.get();
+                } catch (ExecutionException e) {
+                    Log.e("Asolution", "solvePortfolio: An engine failed", e.getCause());
+                    continue;
                 }
+                if (!isValidPath(result.getPath()))
+                    continue;
+                if (result.getStatus() == SolveResult.Status.SOLVED)
+                    winner = result;
+                else if (best == null || result.getPath().getCost() < best.getPath().getCost())
+                    best = result;
             }
-            if (empty) {
-                for (int j = grid[0].length - 20; j < grid[0].length; j++) {
-                    grid[i][j] = 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new SolveResult(SolveResult.Status.CANCELLED, null, new SolveStats());
+        } finally {
+            for (SolveControl engineControl : controls) {
+                synchronized (engineControl) {
+                    engineControl.cancel();
                 }
             }
         }
 
+        if (winner == null)
+            winner = best != null ? best : new SolveResult(control.isPastDeadline()
+                    ? SolveResult.Status.TIMED_OUT : SolveResult.Status.NO_PATH, null, new SolveStats());
+        Log.i("Asolution", "solvePortfolio: " + winner.getEngine() + " won with " + winner.getStatus()
+                + " in " + (System.nanoTime() - startTime) / 1000000 + " ms against "
+                + Arrays.toString(portfolio));
+        return winner;
     }
 
-    public int[] startFinish2(int[][] maze) {
-        final int width = maze[0].length, height = maze.length;
+    // Whether a path runs from the start to the finish in steps between free neighbouring pixels
+    private boolean isValidPath(PackedPath path) {
+        if (path == null || path.getI(0) != start[0] || path.getJ(0) != start[1]
+                || path.getI(path.length() - 1) != finish[0] || path.getJ(path.length() - 1) != finish[1])
+            return false;
+        for (int k = 0; k < path.length(); k++) {
+            if (searchGrid.isWall(path.getI(k), path.getJ(k)))
+                return false;
+            if (k > 0 && (Math.abs(path.getI(k) - path.getI(k - 1)) > 1 || Math.abs(path.getJ(k) - path.getJ(k - 1)) > 1
+                    || path.getCell(k) == path.getCell(k - 1)))
+                return false;
+        }
+        return true;
+    }
 
-        /* Find the changes in the x and y coordinates relative to the walls and make arrays for each, pretty much a
-         * graph of the derivative or change in slopes of the outer walls of the maze.
-         */
+    /**
+     * Gathers the ends of the entrance pairs nearly as likely as the best for MULTI_GOAL. Only
+     * pairs in the start's component can be searched, and a finish that's also a start is left
+     * out, since it would be a path of no length.
+     */
+    private void collectCandidates() {
+        IntList starts = new IntList(), finishes = new IntList();
+        starts.add(start[0] * width + start[1]);
+        finishes.add(finish[0] * width + finish[1]);
+        for (EntranceFinder.Candidate candidate : entranceCandidates) {
+            if (candidate.getConfidence() < entranceCandidates.get(0).getConfidence() * CANDIDATE_RATIO)
+                break;
+            if (searchGrid.isWall(candidate.getStartI(), candidate.getStartJ()))
+                continue;
+            addOnce(starts, candidate.getStartI() * width + candidate.getStartJ());
+            addOnce(finishes, candidate.getEndI() * width + candidate.getEndJ());
+        }
 
-        // Top to bottom
-        int dy = 0;
-        int prevY = 0;
-        int startX = (int) (width * .03);
-        int endX = (int) (width * .97);
-        int firstTB_Y = 0;
-        int[] top_bottom_dys = new int[endX - startX];
-
-        for (int x = startX; x < endX; x++) {
-            for (int y = 0; y < height; y++) {
-                if (maze[y][x] == 1) {
-                    if (x > startX)
-                        dy = y - prevY;
-                    else
-                        firstTB_Y = y;
-                    top_bottom_dys[x - startX] = dy;
-                    prevY = y;
-                    break;
-                }
-            }
+        IntList goals = new IntList();
+        for (int f = 0; f < finishes.size(); f++) {
+            if (!contains(starts, finishes.get(f)))
+                goals.add(finishes.get(f));
         }
+        candidateStarts = starts.toArray();
+        candidateFinishes = goals.toArray();
+        Log.i("Asolution", "collectCandidates: " + candidateStarts.length + " starts, "
+                + candidateFinishes.length + " finishes");
+    }
 
-        // Bottom to top
-        dy = 0;
-        prevY = 0;
-        int firstBT_Y = 0;
-        int[] bottom_top_dys = new int[endX - startX];
-        for (int x = startX; x < endX; x++) {
-            for (int y = height - 1; y >= 0; y--) {
-                if (maze[y][x] == 1) {
-                    if (x > startX)
-                        dy = prevY - y;
-                    else
-                        firstBT_Y = y;
-                    bottom_top_dys[x - startX] = dy;
-                    prevY = y;
-                    break;
-                }
-            }
+    private static void addOnce(IntList list, int value) {
+        if (!contains(list, value))
+            list.add(value);
+    }
+
+    private static boolean contains(IntList list, int value) {
+        for (int k = 0; k < list.size(); k++) {
+            if (list.get(k) == value)
+                return true;
         }
+        return false;
+    }
 
-        // Left to Right
-        int dx = 0;
-        int prevX = 0;
-        int startY = (int) (height * .03);
-        int endY = (int) (height * .97);
-        int firstLR_X=0;
-        int[] left_right_dxs = new int[endY - startY];
-
-        for (int y = startY; y < endY; y++) {
-            for (int x = 0; x < width; x++) {
-                if (maze[y][x] == 1) {
-                    if (y > startY)
-                        dx = x - prevX;
-                    else
-                        firstLR_X = x;
-                    left_right_dxs[y - startY] = dx;
-                    prevX = x;
-                    break;
-                }
-            }
+    private static OpenList openList(SolverContext context, Queue queue) {
+        return queue == Queue.HEAP ? context.heap() : context.bucketQueue();
+    }
+
+    private void rowCleanUp(BoundaryProfiles profiles) {
+        for (int i = 0; i < height; i++) {
+            if (profiles.isRowEmpty(i))
+                profiles.fillRow(i, width - 20, width);
         }
+    }
 
-        // Right to left
-        dx = 0;
-        prevX = 0;
-        int firstRL_X=0;
-        int[] right_left_dxs = new int[endY - startY];
-        for (int y = startY; y < endY; y++) {
-            for (int x = width - 1; x >= 0; x--) {
-                if (maze[y][x] == 1) {
-                    if (y > startY)
-                        dx = prevX - x;
-                    else
-                        firstRL_X = x;
-                    right_left_dxs[y - startY] = dx;
-                    prevX = x;
-                    break;
-                }
-            }
+    public int[] startFinish2(MazeGrid maze) {
+        return startFinish2(new BoundaryProfiles(maze));
+    }
+
+    private int[] startFinish2(BoundaryProfiles profiles) {
+        final int width = profiles.getMaze().getWidth(), height = profiles.getMaze().getHeight();
+
+        /* Find the changes in the x and y coordinates relative to the walls and make arrays for each, pretty much a
+         * graph of the derivative or change in slopes of the outer walls of the maze.
+         */
+        int startX = (int) (width * .03);
+        int endX = (int) (width * .97);
+        int startY = (int) (height * .03);
+        int endY = (int) (height * .97);
+        int[] from = {startX, startX, startY, startY};
+        int[][] slopes = new int[4][];
+        int[] first = new int[4];
+        for (int side = BoundaryProfiles.TOP; side <= BoundaryProfiles.RIGHT; side++) {
+            slopes[side] = slopes(profiles, side, from[side], side <= BoundaryProfiles.BOTTOM ? endX : endY);
+            first[side] = firstDepth(profiles, side, from[side], side <= BoundaryProfiles.BOTTOM ? endX : endY);
         }
+        final int[] top_bottom_dys = slopes[BoundaryProfiles.TOP];
+        final int[] bottom_top_dys = slopes[BoundaryProfiles.BOTTOM];
+        final int[] left_right_dxs = slopes[BoundaryProfiles.LEFT];
+        final int[] right_left_dxs = slopes[BoundaryProfiles.RIGHT];
 
         // Find the extrema of those derivative arrays (biggest jumps from white to black) to find the entrances.
         final int[][] TB_ex = findExtrema(top_bottom_dys);
@@ -163,30 +516,18 @@ public class Asolution {
             }
         }
 
-        // Extract the actual coordinates of those jumps so they can be used by A*
+        // Extract the actual coordinates of those jumps so they can be used by A*. The wall's depth
+        // at a jump is its first depth plus the sum of the slopes before it.
         int[] extremaIndxs = {largestIndx, secondIndx};
         int[] startEnd = new int[4];
         for (int i = 0; i < 4; i+=2) {
-            int indx = extremaIndxs[i/2];
-            int[][] pair = extrema[indx];
-            switch (indx) {
-                case 0:
-                    startEnd[i+1] = startX + pair[0][1] + (pair[1][1] - pair[0][1]) / 2;
-                    startEnd[i] = firstTB_Y + sumUpTo(top_bottom_dys, pair[0][1]);
-                    break;
-                case 1:
-                    startEnd[i+1] = startX + pair[0][1] + (pair[1][1] - pair[0][1]) / 2;
-                    startEnd[i] = firstBT_Y - sumUpTo(bottom_top_dys, pair[0][1]);
-                    break;
-                case 2:
-                    startEnd[i+1] = firstLR_X + sumUpTo(left_right_dxs, pair[0][1]);
-                    startEnd[i] = startY + pair[0][1] + (pair[1][1] - pair[0][1]) / 2;
-                    break;
-                case 3:
-                    startEnd[i+1] =  firstRL_X - sumUpTo(right_left_dxs, pair[0][1]);
-                    startEnd[i] = startY + pair[0][1] + (pair[1][1] - pair[0][1]) / 2;
-                    break;
-            }
+            int side = extremaIndxs[i/2];
+            int[][] pair = extrema[side];
+            int[] sums = prefixSums(slopes[side]);
+            int pixel = profiles.pixel(side, from[side] + pair[0][1] + (pair[1][1] - pair[0][1]) / 2,
+                    first[side] + sums[pair[0][1]]);
+            startEnd[i] = pixel / width;
+            startEnd[i+1] = pixel % width;
         }
 
         Log.i("Asolution", "startFinish: " + Arrays.toString(startEnd));
@@ -214,13 +555,38 @@ public class Asolution {
         return new int[][]{{max, maxIndx}, {min, minIndx}};
     }
 
-    // Sums an array up to an index
-    private int sumUpTo(int[] arr, int maxIndex) {
-        int sum = 0;
-        for (int i = 0; i < maxIndex; i++) {
-            sum += arr[i];
+    // The change in the outer wall's depth from each position of a side to the next it's found at.
+    // Positions where there's no wall are left at 0.
+    private static int[] slopes(BoundaryProfiles profiles, int side, int from, int to) {
+        int[] slopes = new int[to - from];
+        int prev = -1, across = profiles.across(side);
+        for (int p = from; p < to; p++) {
+            int d = profiles.depth(side, p);
+            if (d == across)
+                continue;
+            if (prev != -1)
+                slopes[p - from] = d - prev;
+            prev = d;
+        }
+        return slopes;
+    }
+
+    // The outer wall's depth at the first position of a side it's found at, or 0 if it never is
+    private static int firstDepth(BoundaryProfiles profiles, int side, int from, int to) {
+        for (int p = from; p < to; p++) {
+            int d = profiles.depth(side, p);
+            if (d != profiles.across(side))
+                return d;
         }
-        return sum;
+        return 0;
+    }
+
+    // sums[k] is the sum of the first k values, so any of them is looked up instead of added up
+    private static int[] prefixSums(int[] arr) {
+        int[] sums = new int[arr.length + 1];
+        for (int i = 0; i < arr.length; i++)
+            sums[i + 1] = sums[i] + arr[i];
+        return sums;
     }
 
    private int[] startFinish(int[][] array) {
@@ -305,30 +671,6 @@ public class Asolution {
         return output;
     }
 
-    private int[][] makeBlocked(int[][] array) {
-        int[][] blocked;
-        int index = 0;
-        for (int i = 0; i < array.length; i++) {
-            for (int j = 0; j < array[0].length; j++) {
-                if (array[i][j] == 1) {
-                    index++;
-                }
-            }
-        }
-        blocked = new int[index][2];
-        index = 0;
-        for (int i = 0; i < array.length; i++) {
-            for (int j = 0; j < array[0].length; j++) {
-                if (array[i][j] == 1) {
-                    blocked[index] = new int[]{i, j};
-                    index++;
-                }
-            }
-        }
-        //print(blocked);
-        return blocked;
-    }
-
     private void print(int[][] array) {
         String output = "";
         for (int i = 0; i < array.length; i++) {
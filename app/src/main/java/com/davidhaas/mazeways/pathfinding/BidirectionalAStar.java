@@ -0,0 +1,291 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import android.util.Log;
+
+
+/**
+ * Name: BidirectionalAStar
+ * Purpose: Front-to-end bidirectional A*. One frontier searches from the start towards the end
+ * and the other from the end towards the start, each guided by the octile distance to its target.
+ * Whenever one side reaches a cell the other side has a cost for, the two costs add up to a
+ * complete path. The search stops once the cheapest such path costs no more than the lowest
+ * f-cost left on either open list, at which point no path through unexplored cells can beat it.
+ *
+ * The two frontiers can run on two threads. Each thread only writes its own side's arrays and
+ * reads the other side's g-costs, which start at INFINITY. A stale read just delays finding a
+ * meeting point, since every value a side ever stores is the cost of a real path.
+ */
+public class BidirectionalAStar implements PathSolver {
+    private static final String TAG = "BidirectionalAStar";
+    private static final int INFINITY = SolverContext.INFINITY;
+    private static final int[] DI = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DJ = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    private final MazeGrid maze;
+    private final int width, height;
+    private final int start, end;
+    private final Frontier forward, backward;
+    private boolean threaded;
+    private SolveControl control = new SolveControl();
+
+    private final Object meetingLock = new Object();
+    private volatile int bestCost = INFINITY; // The cheapest complete path found so far
+    private int meetingCell = -1;             // The cell that the cheapest path goes through
+    private volatile boolean stopped;
+
+    public BidirectionalAStar(MazeGrid maze, int startI, int startJ, int endI, int endJ) {
+        this(maze, new IndexedHeap(maze.getWidth() * maze.getHeight()),
+                new IndexedHeap(maze.getWidth() * maze.getHeight()), startI, startJ, endI, endJ);
+    }
+
+    /**
+     * @param forwardOpen The empty open list of the search from the start
+     * @param backwardOpen The empty open list of the search from the end
+     */
+    BidirectionalAStar(MazeGrid maze, OpenList forwardOpen, OpenList backwardOpen,
+                       int startI, int startJ, int endI, int endJ) {
+        this(maze, new SolverContext(maze.getWidth() * maze.getHeight()), forwardOpen,
+                new SolverContext(maze.getWidth() * maze.getHeight()), backwardOpen, startI, startJ, endI, endJ);
+    }
+
+    /**
+     * @param forwardContext The state of the search from the start. The two contexts must differ.
+     * @param backwardContext The state of the search from the end
+     */
+    BidirectionalAStar(MazeGrid maze, SolverContext forwardContext, OpenList forwardOpen,
+                       SolverContext backwardContext, OpenList backwardOpen,
+                       int startI, int startJ, int endI, int endJ) {
+        this.maze = maze;
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.start = startI * width + startJ;
+        this.end = endI * width + endJ;
+        this.forward = new Frontier(forwardContext, forwardOpen, start, endI, endJ);
+        this.backward = new Frontier(backwardContext, backwardOpen, end, startI, startJ);
+        this.forward.other = backward;
+        this.backward.other = forward;
+    }
+
+    /**
+     * @param threaded Whether to run the backward frontier on a second thread
+     */
+    public void setThreaded(boolean threaded) {
+        this.threaded = threaded;
+    }
+
+    @Override
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    /**
+     * Bidirectional search always finds an optimal path, because its stopping rule relies on the
+     * heuristic never overestimating. Weights other than 1 are ignored.
+     */
+    @Override
+    public void setWeight(double weight) {
+        Heuristics.checkWeight(weight);
+        if (weight != 1)
+            Log.w(TAG, "setWeight: Ignoring weight " + weight + ", bidirectional search is always optimal");
+    }
+
+    @Override
+    public void solve() {
+        if (maze.isWall(start / width, start % width) || maze.isWall(end / width, end % width))
+            return;
+
+        forward.init();
+        backward.init();
+        if (start == end) {
+            offerMeeting(start, 0);
+            return;
+        }
+
+        if (threaded)
+            solveThreaded();
+        else
+            solveAlternating();
+
+        Log.i(TAG, "solve: Expanded " + forward.stats.expanded + " forward and "
+                + backward.stats.expanded + " backward, path cost " + bestCost);
+    }
+
+    // Expands whichever frontier is smaller until the stopping rule holds
+    private void solveAlternating() {
+        while (!forward.open.isEmpty() && !backward.open.isEmpty()) {
+            if (bestCost <= Math.max(forward.open.minKey(), backward.open.minKey()))
+                return;
+            if (control.checkpoint(getExpandedCount(), Math.min(forward.open.minKey(), backward.open.minKey())))
+                return;
+            if (forward.open.size() <= backward.open.size())
+                forward.expand();
+            else
+                backward.expand();
+        }
+    }
+
+    // Runs the backward frontier on a new thread and the forward one on this thread
+    private void solveThreaded() {
+        Thread backwardThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                backward.run();
+            }
+        });
+        backwardThread.start();
+        forward.run();
+
+        try {
+            backwardThread.join();
+        } catch (InterruptedException e) {
+            stopped = true;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void offerMeeting(int cell, int cost) {
+        synchronized (meetingLock) {
+            if (cost < bestCost) {
+                bestCost = cost;
+                meetingCell = cell;
+            }
+        }
+    }
+
+    @Override
+    public PackedPath getPackedPath() {
+        int meet;
+        synchronized (meetingLock) {
+            meet = meetingCell;
+        }
+        if (meet == -1)
+            return null;
+
+        // The forward half runs from the start to the meeting cell, the backward half on to the end
+        int forwardLength = 0, backwardLength = 0;
+        for (int c = meet; c != -1; c = forward.parent[c])
+            forwardLength++;
+        for (int c = backward.parent[meet]; c != -1; c = backward.parent[c])
+            backwardLength++;
+
+        int[] cells = new int[forwardLength + backwardLength];
+        int k = forwardLength;
+        for (int c = meet; c != -1; c = forward.parent[c])
+            cells[--k] = c;
+        k = forwardLength;
+        for (int c = backward.parent[meet]; c != -1; c = backward.parent[c])
+            cells[k++] = c;
+        return new PackedPath(cells, width);
+    }
+
+    @Override
+    public SolveStats getStats() {
+        SolveStats both = new SolveStats();
+        both.add(forward.stats);
+        both.add(backward.stats);
+        return both;
+    }
+
+    @Override
+    public int getExpandedCount() {
+        return forward.stats.expanded + backward.stats.expanded;
+    }
+
+    @Override
+    public int getHeapOperations() {
+        return forward.open.getOperations() + backward.open.getOperations();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return forward.context.getAllocatedBytes() + forward.open.getAllocatedBytes()
+                + backward.context.getAllocatedBytes() + backward.open.getAllocatedBytes();
+    }
+
+    /**
+     * The state of one direction of the search.
+     */
+    private class Frontier {
+        private final SolverContext context;
+        private final OpenList open;
+        private final int source;
+        private final int targetI, targetJ;
+        private final int[] gCost; // INFINITY until this side reaches the cell
+        private final int[] parent;
+        private Frontier other;
+        private final SolveStats stats = new SolveStats();
+
+        private Frontier(SolverContext context, OpenList open, int source, int targetI, int targetJ) {
+            this.context = context;
+            this.open = open;
+            this.source = source;
+            this.targetI = targetI;
+            this.targetJ = targetJ;
+            this.gCost = context.gCost;
+            this.parent = context.parent;
+        }
+
+        private void init() {
+            context.reset();
+            gCost[source] = 0;
+            parent[source] = -1;
+            context.open(source);
+            open.push(source, heuristic(source), 0);
+            stats.generated(open.size());
+        }
+
+        // Expands this side on its own thread until it proves the best path or the other side does
+        private void run() {
+            while (!stopped && !open.isEmpty()) {
+                if (bestCost <= open.minKey() || control.checkpoint(stats.expanded, open.minKey()))
+                    break;
+                expand();
+            }
+            stopped = true;
+        }
+
+        private void expand() {
+            int current = open.pop();
+            context.close(current);
+            stats.closed++;
+            stats.expanded++;
+
+            int ci = current / width, cj = current - ci * width;
+            for (int k = 0; k < 8; k++) {
+                int ni = ci + DI[k], nj = cj + DJ[k];
+                if (ni < 0 || ni >= height || nj < 0 || nj >= width || maze.isWall(ni, nj))
+                    continue;
+                int next = ni * width + nj;
+                if (context.isClosed(next))
+                    continue;
+
+                int cost = gCost[current]
+                        + ((DI[k] != 0 && DJ[k] != 0) ? Heuristics.DIAGONAL_COST : Heuristics.V_H_COST);
+                if (!context.isOpen(next)) {
+                    context.open(next);
+                    gCost[next] = cost;
+                    parent[next] = current;
+                    open.push(next, cost + heuristic(next), cost);
+                    stats.generated(open.size());
+                } else if (cost < gCost[next]) {
+                    gCost[next] = cost;
+                    parent[next] = current;
+                    open.decreaseKey(next, cost + heuristic(next), cost);
+                    stats.decreaseKeys++;
+                } else {
+                    continue;
+                }
+
+                // The other side has reached this cell too, so the two halves make a full path
+                int otherCost = other.gCost[next];
+                if (otherCost != INFINITY)
+                    offerMeeting(next, cost + otherCost);
+            }
+        }
+
+        private int heuristic(int cell) {
+            int i = cell / width, j = cell - i * width;
+            return Heuristics.octile(Math.abs(i - targetI), Math.abs(j - targetJ));
+        }
+    }
+}
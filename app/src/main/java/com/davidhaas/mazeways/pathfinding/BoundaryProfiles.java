@@ -0,0 +1,256 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Name: BoundaryProfiles
+ * Purpose: The first wall seen from each side of a maze: for every column the first and last wall
+ * row, and for every row the first and last wall column. All four come from one pass over the rows
+ * in memory order, a word of 64 pixels at a time, instead of a scan per side that walks down the
+ * columns. The rows are split into bands that are profiled at once on the cores and then merged.
+ */
+class BoundaryProfiles {
+    private static final String TAG = "BoundaryProfiles";
+    static final int TOP = 0, BOTTOM = 1, LEFT = 2, RIGHT = 3;
+    private static final int MIN_BAND = 128; // Bands with fewer rows than this aren't worth another thread
+
+    private final MazeGrid maze;
+    private final int width, height;
+    private final int[] top, bottom; // The first and last wall row of each column, or -1
+    private final int[] left, right; // The first and last wall column of each row, or -1
+    private final long nanos;
+
+    BoundaryProfiles(MazeGrid maze) {
+        this.maze = maze;
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.left = new int[height];
+        this.right = new int[height];
+
+        final long startTime = System.nanoTime();
+        int bands = Math.max(1, Math.min(SolverPool.THREADS, height / MIN_BAND));
+        int bandSize = (height + bands - 1) / bands;
+        Band[] parts = new Band[bands];
+        for (int b = 0; b < bands; b++)
+            parts[b] = new Band(b * bandSize, Math.min(height, (b + 1) * bandSize));
+        run(parts);
+
+        // A column's first wall is in the first band that has one, and its last in the last
+        top = parts[0].top;
+        bottom = parts[bands - 1].bottom;
+        for (int j = 0; j < width; j++) {
+            for (int b = 1; top[j] == -1 && b < bands; b++)
+                top[j] = parts[b].top[j];
+            for (int b = bands - 2; bottom[j] == -1 && b >= 0; b--)
+                bottom[j] = parts[b].bottom[j];
+        }
+        nanos = System.nanoTime() - startTime;
+        Log.i(TAG, "BoundaryProfiles: " + width + "x" + height + " in " + bands + " bands, "
+                + nanos / 1000 + " us");
+    }
+
+    MazeGrid getMaze() {
+        return maze;
+    }
+
+    /**
+     * @return How long the profiles took to make, in nanoseconds.
+     */
+    long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return The number of positions along a side: columns for the top and bottom, rows otherwise.
+     */
+    int length(int side) {
+        return side <= BOTTOM ? width : height;
+    }
+
+    /**
+     * @return How far it is across the maze from a side.
+     */
+    int across(int side) {
+        return side <= BOTTOM ? height : width;
+    }
+
+    /**
+     * @param side TOP, BOTTOM, LEFT or RIGHT
+     * @param p The column, for the top and bottom, or the row
+     * @return The distance from the edge of the side to its first wall, or across if there's none.
+     */
+    int depth(int side, int p) {
+        switch (side) {
+            case TOP:
+                return top[p] == -1 ? height : top[p];
+            case BOTTOM:
+                return bottom[p] == -1 ? height : height - 1 - bottom[p];
+            case LEFT:
+                return left[p] == -1 ? width : left[p];
+            default:
+                return right[p] == -1 ? width : width - 1 - right[p];
+        }
+    }
+
+    /**
+     * @return The pixel a depth in from the edge of a side, as i * width + j.
+     */
+    int pixel(int side, int p, int d) {
+        switch (side) {
+            case TOP:
+                return d * width + p;
+            case BOTTOM:
+                return (height - 1 - d) * width + p;
+            case LEFT:
+                return p * width + d;
+            default:
+                return p * width + width - 1 - d;
+        }
+    }
+
+    boolean isRowEmpty(int i) {
+        return left[i] == -1;
+    }
+
+    /**
+     * Turns a range of a row into walls, in the maze and the profiles.
+     * @param i The row
+     * @param fromJ The first column, inclusive
+     * @param toJ The last column, exclusive
+     */
+    void fillRow(int i, int fromJ, int toJ) {
+        fromJ = Math.max(fromJ, 0);
+        toJ = Math.min(toJ, width);
+        if (fromJ >= toJ)
+            return;
+
+        maze.fillRow(i, fromJ, toJ);
+        if (left[i] == -1 || fromJ < left[i])
+            left[i] = fromJ;
+        right[i] = Math.max(right[i], toJ - 1);
+        for (int j = fromJ; j < toJ; j++) {
+            if (top[j] == -1 || i < top[j])
+                top[j] = i;
+            bottom[j] = Math.max(bottom[j], i);
+        }
+    }
+
+    // Profiles the bands, the first on this thread and the rest on the pool
+    private static void run(Band[] parts) {
+        List<FutureTask<Void>> pieces = new ArrayList<>(parts.length - 1);
+        for (int b = 1; b < parts.length; b++)
+            pieces.add(SolverPool.fork(parts[b]));
+        parts[0].call();
+
+        // The bands write into the row profiles, so they must all finish even if this is interrupted
+        boolean interrupted = false;
+        while (true) {
+            try {
+                SolverPool.join(pieces);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Profiles a band of rows. The row profiles go straight into the shared arrays, which no other
+     * band writes to, and the column profiles are kept for the merge.
+     */
+    private class Band implements Callable<Void> {
+        private final int fromI, toI;
+        private final int[] top = new int[width], bottom = new int[width];
+
+        private Band(int fromI, int toI) {
+            this.fromI = fromI;
+            this.toI = toI;
+        }
+
+        @Override
+        public Void call() {
+            int words = maze.getWordsPerRow();
+            long[] seen = new long[words]; // The columns that have had a wall so far
+            int[] open = new int[words];   // The words with columns that haven't
+            int openCount = words;
+            for (int w = 0; w < words; w++)
+                open[w] = w;
+            Arrays.fill(top, -1);
+            Arrays.fill(bottom, -1);
+
+            for (int i = fromI; i < toI; i++) {
+                // The row's ends, reading in from each end to the first word with a wall
+                int first = -1, last = -1;
+                for (int w = 0; w < words; w++) {
+                    long word = maze.getWord(i, w);
+                    if (word != 0) {
+                        first = (w << 6) + Long.numberOfTrailingZeros(word);
+                        break;
+                    }
+                }
+                for (int w = words - 1; first != -1 && w >= 0; w--) {
+                    long word = maze.getWord(i, w);
+                    if (word != 0) {
+                        last = (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+                        break;
+                    }
+                }
+                left[i] = first;
+                right[i] = last;
+                if (first == -1)
+                    continue;
+
+                // Columns walled for the first time in this band. A word is dropped from the open
+                // ones once all its columns have been.
+                for (int k = 0; k < openCount; ) {
+                    int w = open[k];
+                    long fresh = maze.getWord(i, w) & ~seen[w];
+                    if (fresh != 0) {
+                        seen[w] |= fresh;
+                        for (; fresh != 0; fresh &= fresh - 1)
+                            top[(w << 6) + Long.numberOfTrailingZeros(fresh)] = i;
+                        if (seen[w] == fullWord(w)) {
+                            open[k] = open[--openCount];
+                            continue;
+                        }
+                    }
+                    k++;
+                }
+            }
+
+            // The last walls, reading back up from the end of the band until every column that has
+            // a wall in it has been found, which is usually within a few rows
+            int remaining = 0;
+            for (int w = 0; w < words; w++) {
+                remaining += Long.bitCount(seen[w]);
+                seen[w] = 0;
+            }
+            for (int i = toI - 1; i >= fromI && remaining > 0; i--) {
+                for (int w = 0; w < words; w++) {
+                    long fresh = maze.getWord(i, w) & ~seen[w];
+                    if (fresh == 0)
+                        continue;
+                    seen[w] |= fresh;
+                    remaining -= Long.bitCount(fresh);
+                    for (; fresh != 0; fresh &= fresh - 1)
+                        bottom[(w << 6) + Long.numberOfTrailingZeros(fresh)] = i;
+                }
+            }
+            return null;
+        }
+
+        // The bits of a word that are columns of the maze
+        private long fullWord(int w) {
+            int bits = width - (w << 6);
+            return bits >= 64 ? -1L : (1L << bits) - 1;
+        }
+    }
+}
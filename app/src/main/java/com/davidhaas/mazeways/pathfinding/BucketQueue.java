@@ -0,0 +1,217 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Name: BucketQueue
+ * Purpose: A monotone bucket queue (Dial's algorithm) for small integer keys. Every path cost is
+ * built from the 10 and 14 step costs, so the keys on the open list only span a narrow band and
+ * can be kept in a circular array of buckets, one per key. Push and decrease-key are O(1), and
+ * finding the lowest bucket is O(1) amortised as long as popped keys never go down, which holds
+ * for a consistent heuristic.
+ *
+ * Each bucket is a doubly linked list threaded through per-cell next/prev arrays, so a cell can be
+ * unlinked for decrease-key without searching. Cells go on the front of their bucket in any order,
+ * and only the lowest bucket is put in order of highest tie-breaker first, once, when pops reach
+ * it. A cell that joins that bucket afterwards is inserted in order. The engines use the g-cost as
+ * the tie-breaker, and a cell reached from the one just popped has a higher g-cost than anything
+ * left in its bucket, so that insert stops at the front.
+ */
+class BucketQueue implements OpenList {
+    private static final int NONE = -1, NOT_QUEUED = -2;
+    private static final int NO_KEY = Integer.MIN_VALUE;
+
+    private int[] head;      // The first cell of each bucket, or NONE
+    private int mask;        // head.length - 1, which is always a power of two
+    private final int[] next, prev; // The bucket neighbours of each cell; prev is NOT_QUEUED if it isn't queued
+    private final int[] keyOf;
+    private final int[] tieOf;
+    private int orderedKey = NO_KEY; // The key of the bucket kept in tie order, if any
+    private long[] scratch = new long[64]; // Holds a bucket while it's sorted
+    private int base;        // No queued key is lower than this
+    private int top;         // No queued key is higher than this
+    private int size;
+    private int operations;
+
+    /**
+     * Creates an empty queue.
+     * @param cellCount The number of distinct cell indices that can be stored
+     */
+    BucketQueue(int cellCount) {
+        head = new int[64];
+        mask = head.length - 1;
+        Arrays.fill(head, NONE);
+        next = new int[cellCount];
+        prev = new int[cellCount];
+        keyOf = new int[cellCount];
+        tieOf = new int[cellCount];
+        Arrays.fill(prev, NOT_QUEUED);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(int node) {
+        return prev[node] != NOT_QUEUED;
+    }
+
+    @Override
+    public int getOperations() {
+        return operations;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return 4L * (next.length + prev.length + keyOf.length + tieOf.length + head.length) + 8L * scratch.length;
+    }
+
+    @Override
+    public void push(int node, int key, int tie) {
+        operations++;
+        if (size == 0) {
+            base = key;
+            top = key;
+        }
+        tieOf[node] = tie;
+        insert(node, key);
+        size++;
+    }
+
+    @Override
+    public int minKey() {
+        while (head[base & mask] == NONE)
+            base++;
+        if (base != orderedKey) {
+            sortBucket(base & mask);
+            orderedKey = base;
+        }
+        return base;
+    }
+
+    @Override
+    public int pop() {
+        operations++;
+        int node = head[minKey() & mask];
+        unlink(node);
+        size--;
+        return node;
+    }
+
+    @Override
+    public void decreaseKey(int node, int key, int tie) {
+        operations++;
+        unlink(node);
+        tieOf[node] = tie;
+        insert(node, key);
+    }
+
+    @Override
+    public void clear() {
+        for (int key = base; size > 0 && key <= top; key++) {
+            int bucket = key & mask;
+            for (int node = head[bucket]; node != NONE; node = next[node]) {
+                prev[node] = NOT_QUEUED;
+                size--;
+            }
+            head[bucket] = NONE;
+        }
+        orderedKey = NO_KEY;
+        operations = 0;
+    }
+
+    private void insert(int node, int key) {
+        if (key < base)
+            base = key;
+        if (key > top)
+            top = key;
+        if (top - base > mask)
+            grow(top - base + 1);
+
+        keyOf[node] = key;
+        if (key == orderedKey)
+            link(node, key & mask);
+        else
+            linkFront(node, key & mask);
+    }
+
+    // Links a cell onto the front of a bucket
+    private void linkFront(int node, int bucket) {
+        int after = head[bucket];
+        next[node] = after;
+        prev[node] = NONE;
+        if (after != NONE)
+            prev[after] = node;
+        head[bucket] = node;
+    }
+
+    // Links a cell into an ordered bucket after every cell with a higher tie-breaker
+    private void link(int node, int bucket) {
+        int before = NONE, after = head[bucket];
+        while (after != NONE && tieOf[after] > tieOf[node]) {
+            before = after;
+            after = next[after];
+        }
+
+        next[node] = after;
+        prev[node] = before;
+        if (after != NONE)
+            prev[after] = node;
+        if (before == NONE)
+            head[bucket] = node;
+        else
+            next[before] = node;
+    }
+
+    private void unlink(int node) {
+        if (prev[node] == NONE)
+            head[keyOf[node] & mask] = next[node];
+        else
+            next[prev[node]] = next[node];
+        if (next[node] != NONE)
+            prev[next[node]] = prev[node];
+        prev[node] = NOT_QUEUED;
+    }
+
+    // Puts a bucket in order of highest tie-breaker first. Each cell is packed with its inverted tie
+    // above it, so that sorting the longs ascending sorts the ties descending.
+    private void sortBucket(int bucket) {
+        int count = 0;
+        for (int node = head[bucket]; node != NONE; node = next[node]) {
+            if (count == scratch.length)
+                scratch = Arrays.copyOf(scratch, count * 2);
+            scratch[count++] = (long) ~tieOf[node] << 32 | node;
+        }
+        if (count < 2)
+            return;
+        Arrays.sort(scratch, 0, count);
+
+        head[bucket] = NONE;
+        for (int k = count - 1; k >= 0; k--)
+            linkFront((int) scratch[k], bucket);
+    }
+
+    // Widens the circle of buckets so that it covers span distinct keys
+    private void grow(int span) {
+        int[] old = head;
+        int capacity = old.length;
+        while (capacity < span)
+            capacity *= 2;
+
+        head = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(head, NONE);
+        // Every cell in a bucket has the same key, so each list moves over whole
+        for (int first : old) {
+            if (first != NONE)
+                head[keyOf[first] & mask] = first;
+        }
+    }
+}
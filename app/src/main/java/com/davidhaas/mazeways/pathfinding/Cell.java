@@ -3,6 +3,7 @@ package com.davidhaas.mazeways.pathfinding;
 class Cell {
 
     public int heuristicCost = 0; //Heuristic cost
+    public int gCost = 0; //Cost from the start
     public int finalCost = 0; //G+H
     public int i, j;
     public Cell parent; //Used for path generation
@@ -0,0 +1,398 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import android.util.Log;
+
+/**
+ * Name: ClusterGraph
+ * Purpose: The abstract graph of hierarchical A* (HPA*). The maze is cut into square clusters,
+ * and wherever the corridors cross the border between two clusters a transition is placed: a pair
+ * of nodes, one on each side, joined by a single step. Inside each cluster, every pair of nodes
+ * that can reach each other is joined by an edge costing the shortest path between them without
+ * leaving the cluster. A maze of millions of pixels becomes a graph of a few thousand nodes, built
+ * once and reused by every query on the maze.
+ *
+ * Along a border, each run of pixels that are free on both sides is one entrance. A short
+ * entrance gets one transition in its middle, a long one a transition at each end. A diagonal step
+ * across the border that no entrance covers gets its own transition, and so does a diagonal step
+ * through the corner where four clusters meet.
+ */
+public class ClusterGraph {
+    private static final String TAG = "ClusterGraph";
+    static final int INFINITY = Integer.MAX_VALUE;
+    private static final int LONG_ENTRANCE = 6; // The widest entrance that gets only one transition
+
+    private final MazeGrid maze;
+    private final int width, height;
+    private final int clusterSize;
+    private final int clusterRows, clusterCols;
+
+    private final IntList nodePixel = new IntList();
+    private final IntList[] clusterNodes; // The nodes in each cluster
+
+    // The edges out of node n are edgeTo and edgeCost from edgeStart[n] up to edgeStart[n + 1]
+    private int[] edgeStart;
+    private int[] edgeTo;
+    private int[] edgeCost;
+    private long buildNanos;
+
+    /**
+     * Finds the transitions and the costs between them.
+     * @param maze The binary maze
+     * @param clusterSize The side of a cluster in pixels
+     */
+    public ClusterGraph(MazeGrid maze, int clusterSize) {
+        this.maze = maze;
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.clusterSize = clusterSize;
+        this.clusterRows = (height + clusterSize - 1) / clusterSize;
+        this.clusterCols = (width + clusterSize - 1) / clusterSize;
+        this.clusterNodes = new IntList[clusterRows * clusterCols];
+        for (int c = 0; c < clusterNodes.length; c++)
+            clusterNodes[c] = new IntList(8);
+
+        final long startTime = System.nanoTime();
+        IntList from = new IntList(), to = new IntList(), cost = new IntList();
+        findTransitions(from, to, cost);
+        linkClusters(from, to, cost);
+        buildAdjacency(from, to, cost);
+        buildNanos = System.nanoTime() - startTime;
+
+        Log.i(TAG, "ClusterGraph: " + clusterRows + "x" + clusterCols + " clusters, " + nodeCount()
+                + " nodes, " + edgeTo.length + " edges in " + buildNanos / 1000000 + " ms");
+    }
+
+    public int nodeCount() {
+        return nodePixel.size();
+    }
+
+    MazeGrid getMaze() {
+        return maze;
+    }
+
+    int getClusterSize() {
+        return clusterSize;
+    }
+
+    int nodePixel(int node) {
+        return nodePixel.get(node);
+    }
+
+    IntList clusterNodes(int cluster) {
+        return clusterNodes[cluster];
+    }
+
+    int edgeStart(int node) {
+        return edgeStart[node];
+    }
+
+    int edgeEnd(int node) {
+        return edgeStart[node + 1];
+    }
+
+    int edgeTo(int edge) {
+        return edgeTo[edge];
+    }
+
+    int edgeCost(int edge) {
+        return edgeCost[edge];
+    }
+
+    /**
+     * @return The cluster a pixel is in.
+     */
+    int clusterOf(int pixel) {
+        int i = pixel / width;
+        return (i / clusterSize) * clusterCols + (pixel - i * width) / clusterSize;
+    }
+
+    /**
+     * @return The approximate number of bytes held by the graph.
+     */
+    long getAllocatedBytes() {
+        return 4L * (nodePixel.size() + edgeStart.length + edgeTo.length + edgeCost.length);
+    }
+
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    // Scans every border between two clusters and every corner where four clusters meet
+    private void findTransitions(IntList from, IntList to, IntList cost) {
+        int[] a = new int[clusterSize], b = new int[clusterSize];
+
+        // Vertical borders, between column x - 1 and column x
+        for (int x = clusterSize; x < width; x += clusterSize) {
+            for (int r0 = 0; r0 < height; r0 += clusterSize) {
+                int length = Math.min(clusterSize, height - r0);
+                for (int k = 0; k < length; k++) {
+                    a[k] = (r0 + k) * width + x - 1;
+                    b[k] = (r0 + k) * width + x;
+                }
+                linkBorder(a, b, length, from, to, cost);
+            }
+        }
+
+        // Horizontal borders, between row y - 1 and row y
+        for (int y = clusterSize; y < height; y += clusterSize) {
+            for (int c0 = 0; c0 < width; c0 += clusterSize) {
+                int length = Math.min(clusterSize, width - c0);
+                for (int k = 0; k < length; k++) {
+                    a[k] = (y - 1) * width + c0 + k;
+                    b[k] = y * width + c0 + k;
+                }
+                linkBorder(a, b, length, from, to, cost);
+            }
+        }
+
+        // Diagonal steps through the corners
+        for (int y = clusterSize; y < height; y += clusterSize) {
+            for (int x = clusterSize; x < width; x += clusterSize) {
+                if (isFree(y - 1, x - 1) && isFree(y, x))
+                    addTransition((y - 1) * width + x - 1, y * width + x, Heuristics.DIAGONAL_COST, from, to, cost);
+                if (isFree(y - 1, x) && isFree(y, x - 1))
+                    addTransition((y - 1) * width + x, y * width + x - 1, Heuristics.DIAGONAL_COST, from, to, cost);
+            }
+        }
+    }
+
+    /**
+     * Places the transitions across one border segment.
+     * @param a The pixels on one side, in order along the border
+     * @param b The pixels facing them on the other side
+     */
+    private void linkBorder(int[] a, int[] b, int length, IntList from, IntList to, IntList cost) {
+        int runStart = -1;
+        for (int k = 0; k <= length; k++) {
+            boolean open = k < length && isFree(a[k]) && isFree(b[k]);
+            if (open && runStart == -1) {
+                runStart = k;
+            } else if (!open && runStart != -1) {
+                int last = k - 1;
+                if (last - runStart + 1 > LONG_ENTRANCE) {
+                    addTransition(a[runStart], b[runStart], Heuristics.V_H_COST, from, to, cost);
+                    addTransition(a[last], b[last], Heuristics.V_H_COST, from, to, cost);
+                } else {
+                    int middle = (runStart + last) / 2;
+                    addTransition(a[middle], b[middle], Heuristics.V_H_COST, from, to, cost);
+                }
+                runStart = -1;
+            }
+        }
+
+        // A diagonal step is covered by an entrance only if both of its ends are in the same one
+        for (int k = 0; k + 1 < length; k++) {
+            boolean covered = isFree(a[k]) && isFree(b[k]) && isFree(a[k + 1]) && isFree(b[k + 1]);
+            if (covered)
+                continue;
+            if (isFree(a[k]) && isFree(b[k + 1]))
+                addTransition(a[k], b[k + 1], Heuristics.DIAGONAL_COST, from, to, cost);
+            if (isFree(a[k + 1]) && isFree(b[k]))
+                addTransition(a[k + 1], b[k], Heuristics.DIAGONAL_COST, from, to, cost);
+        }
+    }
+
+    private void addTransition(int pixelA, int pixelB, int stepCost, IntList from, IntList to, IntList cost) {
+        int nodeA = nodeAt(pixelA), nodeB = nodeAt(pixelB);
+        from.add(nodeA);
+        to.add(nodeB);
+        cost.add(stepCost);
+        from.add(nodeB);
+        to.add(nodeA);
+        cost.add(stepCost);
+    }
+
+    // The node on a pixel, made if the pixel doesn't have one yet
+    private int nodeAt(int pixel) {
+        IntList nodes = clusterNodes[clusterOf(pixel)];
+        for (int k = 0; k < nodes.size(); k++) {
+            if (nodePixel.get(nodes.get(k)) == pixel)
+                return nodes.get(k);
+        }
+        int node = nodePixel.size();
+        nodePixel.add(pixel);
+        nodes.add(node);
+        return node;
+    }
+
+    // Joins every pair of nodes in a cluster that can reach each other inside it
+    private void linkClusters(IntList from, IntList to, IntList cost) {
+        LocalSearch search = new LocalSearch(this);
+        for (int c = 0; c < clusterNodes.length; c++) {
+            IntList nodes = clusterNodes[c];
+            for (int x = 0; x + 1 < nodes.size(); x++) {
+                search.run(nodePixel.get(nodes.get(x)), -1);
+                for (int y = x + 1; y < nodes.size(); y++) {
+                    int distance = search.cost(nodePixel.get(nodes.get(y)));
+                    if (distance == INFINITY)
+                        continue;
+                    from.add(nodes.get(x));
+                    to.add(nodes.get(y));
+                    cost.add(distance);
+                    from.add(nodes.get(y));
+                    to.add(nodes.get(x));
+                    cost.add(distance);
+                }
+            }
+        }
+    }
+
+    // Sorts the edges by the node they leave from
+    private void buildAdjacency(IntList from, IntList to, IntList cost) {
+        int nodes = nodeCount(), edges = from.size();
+        edgeStart = new int[nodes + 1];
+        for (int e = 0; e < edges; e++)
+            edgeStart[from.get(e) + 1]++;
+        for (int n = 0; n < nodes; n++)
+            edgeStart[n + 1] += edgeStart[n];
+
+        edgeTo = new int[edges];
+        edgeCost = new int[edges];
+        int[] fill = new int[nodes];
+        for (int e = 0; e < edges; e++) {
+            int n = from.get(e), slot = edgeStart[n] + fill[n]++;
+            edgeTo[slot] = to.get(e);
+            edgeCost[slot] = cost.get(e);
+        }
+    }
+
+    private boolean isFree(int pixel) {
+        int i = pixel / width;
+        return !maze.isWall(i, pixel - i * width);
+    }
+
+    private boolean isFree(int i, int j) {
+        return !maze.isWall(i, j);
+    }
+
+    /**
+     * Dijkstra's algorithm confined to one cluster, on arrays the size of a cluster rather than
+     * the maze. Used to cost the edges between a cluster's nodes, to join a query's start and end
+     * to the graph and to turn the edges of an abstract path back into pixels.
+     */
+    static class LocalSearch {
+        // Row and column offsets of the 8 neighbours of a cell
+        private static final int[] DI = {-1, -1, -1, 0, 0, 1, 1, 1};
+        private static final int[] DJ = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+        private final MazeGrid maze;
+        private final int width, size;
+        private final ClusterGraph graph;
+        private final int[] dist;
+        private final byte[] step;  // The neighbour offset that last moved onto each cell
+        private final int[] mark;   // generation for reached cells and generation + 1 for closed ones
+        private int generation = 2;
+        private final BucketQueue open;
+        private int top, left, bottom, right; // The bounds of the cluster, bottom and right exclusive
+        private int source;
+        private int expanded;
+
+        LocalSearch(ClusterGraph graph) {
+            this.graph = graph;
+            this.maze = graph.maze;
+            this.width = graph.width;
+            this.size = graph.clusterSize;
+            this.dist = new int[size * size];
+            this.step = new byte[size * size];
+            this.mark = new int[size * size];
+            this.open = new BucketQueue(size * size);
+        }
+
+        /**
+         * Searches out from a pixel without leaving its cluster.
+         * @param target The pixel to stop at, or -1 to reach the whole cluster
+         */
+        void run(int source, int target) {
+            int i = source / width, j = source - i * width;
+            top = (i / size) * size;
+            left = (j / size) * size;
+            bottom = Math.min(top + size, graph.height);
+            right = Math.min(left + size, width);
+            this.source = source;
+            generation += 2;
+            open.clear();
+
+            int s = local(source);
+            mark[s] = generation;
+            dist[s] = 0;
+            open.push(s, 0, 0);
+            while (!open.isEmpty()) {
+                int current = open.pop();
+                mark[current] = generation + 1;
+                expanded++;
+                int ci = top + current / size, cj = left + current % size;
+                if (ci * width + cj == target)
+                    return;
+
+                for (int k = 0; k < 8; k++) {
+                    int ni = ci + DI[k], nj = cj + DJ[k];
+                    if (ni < top || ni >= bottom || nj < left || nj >= right || maze.isWall(ni, nj))
+                        continue;
+                    int next = (ni - top) * size + nj - left;
+                    if (mark[next] == generation + 1)
+                        continue;
+
+                    int cost = dist[current] + ((DI[k] != 0 && DJ[k] != 0) ? Heuristics.DIAGONAL_COST : Heuristics.V_H_COST);
+                    if (mark[next] != generation) {
+                        mark[next] = generation;
+                        open.push(next, cost, 0);
+                    } else if (cost < dist[next]) {
+                        open.decreaseKey(next, cost, 0);
+                    } else {
+                        continue;
+                    }
+                    dist[next] = cost;
+                    step[next] = (byte) k;
+                }
+            }
+        }
+
+        /**
+         * @return The cost from the last run's source to a pixel, or INFINITY if it wasn't
+         * reached or is outside the cluster.
+         */
+        int cost(int pixel) {
+            int i = pixel / width, j = pixel - i * width;
+            if (i < top || i >= bottom || j < left || j >= right)
+                return INFINITY;
+            int cell = local(pixel);
+            return mark[cell] == generation + 1 ? dist[cell] : INFINITY;
+        }
+
+        /**
+         * Adds the pixels after the last run's source up to and including a reached pixel.
+         */
+        void appendPath(int pixel, IntList pixels) {
+            int length = 0;
+            for (int c = pixel; c != source; c = previous(c))
+                length++;
+
+            int at = pixels.size();
+            for (int k = 0; k < length; k++)
+                pixels.add(0);
+            for (int c = pixel, k = at + length - 1; c != source; c = previous(c))
+                pixels.set(k--, c);
+        }
+
+        /**
+         * @return The cells expanded over every run so far.
+         */
+        int getExpanded() {
+            return expanded;
+        }
+
+        long getAllocatedBytes() {
+            return 9L * dist.length + open.getAllocatedBytes();
+        }
+
+        private int previous(int pixel) {
+            int k = step[local(pixel)];
+            return pixel - DI[k] * width - DJ[k];
+        }
+
+        private int local(int pixel) {
+            int i = pixel / width;
+            return (i - top) * size + pixel - i * width - left;
+        }
+    }
+}
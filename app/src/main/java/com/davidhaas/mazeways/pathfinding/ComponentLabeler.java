@@ -0,0 +1,165 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import android.util.Log;
+
+/**
+ * Name: ComponentLabeler
+ * Purpose: Finds which free pixels of a maze are connected to each other, so that a maze whose
+ * entrances were cut apart by thresholding can be rejected before any search floods it.
+ *
+ * The maze is read one row at a time as runs of free pixels. Each run is joined with a union-find
+ * to the runs of the row above that it touches, including diagonally, since the solvers can step
+ * diagonally. Only the row above is ever looked at, so the pass is linear in the number of runs.
+ */
+public class ComponentLabeler {
+    private static final String TAG = "ComponentLabeler";
+
+    private final MazeGrid maze;
+    private final int width, height;
+
+    // The runs of every row, in order. The runs of row i are rowStart[i] to rowStart[i + 1] - 1.
+    private final IntList runFrom = new IntList(), runTo = new IntList(); // Columns, to is exclusive
+    private final int[] rowStart;
+
+    // Union-find over the runs
+    private final IntList parent = new IntList();
+    private final IntList size = new IntList(); // The number of pixels, at the roots
+
+    public ComponentLabeler(MazeGrid maze) {
+        this.maze = maze;
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.rowStart = new int[height + 1];
+
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < height; i++)
+            labelRow(i);
+        rowStart[height] = runFrom.size();
+        Log.i(TAG, "ComponentLabeler: " + runFrom.size() + " runs in "
+                + (System.nanoTime() - startTime) / 1000000 + " ms");
+    }
+
+    /**
+     * @return Whether there is a path of free pixels between two pixels. False if either is a wall.
+     */
+    public boolean isSameComponent(int i1, int j1, int i2, int j2) {
+        int a = runAt(i1, j1), b = runAt(i2, j2);
+        return a != -1 && b != -1 && find(a) == find(b);
+    }
+
+    /**
+     * @return The number of free pixels connected to a pixel, including itself, or 0 if it's a wall.
+     */
+    public int componentSize(int i, int j) {
+        int run = runAt(i, j);
+        return run == -1 ? 0 : size.get(find(run));
+    }
+
+    /**
+     * @return A copy of the maze in which every pixel that isn't connected to (i, j) is a wall.
+     */
+    public MazeGrid isolate(int i, int j) {
+        MazeGrid isolated = new MazeGrid(width, height);
+        for (int r = 0; r < height; r++)
+            isolated.fillRow(r, 0, width);
+
+        int run = runAt(i, j);
+        if (run == -1)
+            return isolated;
+        int root = find(run);
+        for (int r = 0; r < height; r++) {
+            for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+                if (find(k) == root)
+                    clearRun(isolated, r, runFrom.get(k), runTo.get(k));
+            }
+        }
+        return isolated;
+    }
+
+    // Splits a row into runs of free pixels and joins them to the overlapping runs of the row above
+    private void labelRow(int i) {
+        rowStart[i] = runFrom.size();
+        int above = i > 0 ? rowStart[i - 1] : 0, aboveEnd = rowStart[i];
+
+        int j = nextFree(i, 0);
+        while (j != -1) {
+            int end = maze.nextWall(i, j);
+            if (end == -1)
+                end = width;
+
+            int run = runFrom.size();
+            runFrom.add(j);
+            runTo.add(end);
+            parent.add(run);
+            size.add(end - j);
+
+            // Runs above that end before this one starts (diagonally) can't touch any later run
+            while (above < aboveEnd && runTo.get(above) < j)
+                above++;
+            for (int k = above; k < aboveEnd && runFrom.get(k) <= end; k++)
+                union(run, k);
+
+            j = nextFree(i, end);
+        }
+    }
+
+    // The first free column at or after fromJ, or -1
+    private int nextFree(int i, int fromJ) {
+        if (fromJ >= width)
+            return -1;
+        final int words = maze.getWordsPerRow();
+        int w = fromJ >>> 6;
+        long free = ~maze.getWord(i, w) & (-1L << fromJ);
+        while (true) {
+            if (free != 0) {
+                int j = (w << 6) + Long.numberOfTrailingZeros(free);
+                return j < width ? j : -1;
+            }
+            if (++w == words)
+                return -1;
+            free = ~maze.getWord(i, w);
+        }
+    }
+
+    // The run that holds a pixel, or -1 if the pixel is a wall
+    private int runAt(int i, int j) {
+        int low = rowStart[i], high = rowStart[i + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (runTo.get(mid) <= j)
+                low = mid + 1;
+            else if (runFrom.get(mid) > j)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private int find(int run) {
+        while (parent.get(run) != run) {
+            parent.set(run, parent.get(parent.get(run))); // Path halving
+            run = parent.get(run);
+        }
+        return run;
+    }
+
+    private void union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b)
+            return;
+        if (size.get(a) < size.get(b)) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        parent.set(b, a);
+        size.set(a, size.get(a) + size.get(b));
+    }
+
+    private static void clearRun(MazeGrid grid, int i, int fromJ, int toJ) {
+        for (int j = fromJ; j < toJ; j++)
+            grid.setWall(i, j, false);
+    }
+}
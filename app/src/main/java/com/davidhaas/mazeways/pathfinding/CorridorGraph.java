@@ -0,0 +1,268 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import android.util.Log;
+
+/**
+ * Name: CorridorGraph
+ * Purpose: Compresses the free space of a maze into a small weighted graph. The corridors are
+ * thinned to a one pixel wide skeleton, the skeleton pixels that don't have exactly two skeleton
+ * neighbours (junctions and dead ends) become nodes, and each run of skeleton pixels between two
+ * nodes becomes an edge that remembers its pixels. A corridor hundreds of pixels long becomes one
+ * edge, so a whole maze is typically a few hundred nodes.
+ */
+public class CorridorGraph {
+    private static final String TAG = "CorridorGraph";
+    private static final int NOT_SKELETON = -1;
+
+    // Offsets of the 8 neighbours in clockwise order from north, as Zhang-Suen thinning needs them
+    private static final int[] DI = {-1, -1, 0, 1, 1, 1, 0, -1};
+    private static final int[] DJ = {0, 1, 1, 1, 0, -1, -1, -1};
+
+    private final MazeGrid maze;
+    private final int width, height;
+
+    // What each pixel is on the skeleton: an edge index for edge pixels, -(node + 2) for node
+    // pixels, or NOT_SKELETON
+    private final int[] owner;
+
+    private final IntList nodePixel = new IntList();
+    private final IntList edgeA = new IntList(), edgeB = new IntList(), edgeCost = new IntList();
+    private int[][] edgePixels = new int[16][]; // The pixels strictly between the two nodes, from A to B
+    private long buildNanos;
+
+    /**
+     * Thins the maze and builds the graph.
+     * @param maze The binary maze
+     */
+    public CorridorGraph(MazeGrid maze) {
+        this.maze = maze;
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.owner = new int[width * height];
+
+        final long startTime = System.nanoTime();
+        byte[] skeleton = thin();
+        findNodes(skeleton);
+        traceEdges(skeleton);
+        buildNanos = System.nanoTime() - startTime;
+
+        Log.i(TAG, "CorridorGraph: " + nodeCount() + " nodes, " + edgeCount() + " edges in "
+                + buildNanos / 1000000 + " ms");
+    }
+
+    public int nodeCount() {
+        return nodePixel.size();
+    }
+
+    public int edgeCount() {
+        return edgeA.size();
+    }
+
+    MazeGrid getMaze() {
+        return maze;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int nodePixel(int node) {
+        return nodePixel.get(node);
+    }
+
+    int edgeA(int edge) {
+        return edgeA.get(edge);
+    }
+
+    int edgeB(int edge) {
+        return edgeB.get(edge);
+    }
+
+    int edgeCost(int edge) {
+        return edgeCost.get(edge);
+    }
+
+    int[] edgePixels(int edge) {
+        return edgePixels[edge];
+    }
+
+    /**
+     * @return The node at a pixel, or -1 if the pixel isn't a node.
+     */
+    int nodeAt(int pixel) {
+        return owner[pixel] <= -2 ? -owner[pixel] - 2 : -1;
+    }
+
+    /**
+     * @return The edge that a pixel lies inside of, or -1 if the pixel isn't inside an edge.
+     */
+    int edgeAt(int pixel) {
+        return owner[pixel] >= 0 ? owner[pixel] : -1;
+    }
+
+    boolean isSkeleton(int pixel) {
+        return owner[pixel] != NOT_SKELETON;
+    }
+
+    /**
+     * @return The approximate number of bytes held by the graph.
+     */
+    long getAllocatedBytes() {
+        long bytes = 4L * owner.length + 4L * (nodePixel.size() + 3 * edgeA.size());
+        for (int e = 0; e < edgeCount(); e++)
+            bytes += 4L * edgePixels[e].length;
+        return bytes;
+    }
+
+    /**
+     * The cost of the single step between two adjacent pixels.
+     */
+    int stepCost(int from, int to) {
+        return (from / width != to / width && from % width != to % width)
+                ? Heuristics.DIAGONAL_COST : Heuristics.V_H_COST;
+    }
+
+    // Zhang-Suen thinning of the free space. Returns 1 for skeleton pixels and 0 elsewhere.
+    private byte[] thin() {
+        byte[] img = new byte[width * height];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                if (!maze.isWall(i, j))
+                    img[i * width + j] = 1;
+            }
+        }
+
+        IntList toDelete = new IntList(1024);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < height; i++) {
+                    for (int j = 0; j < width; j++) {
+                        if (img[i * width + j] == 1 && isDeletable(img, i, j, pass))
+                            toDelete.add(i * width + j);
+                    }
+                }
+                for (int k = 0; k < toDelete.size(); k++)
+                    img[toDelete.get(k)] = 0;
+                changed |= !toDelete.isEmpty();
+                toDelete.clear();
+            }
+        }
+        return img;
+    }
+
+    private boolean isDeletable(byte[] img, int i, int j, int pass) {
+        int count = 0, transitions = 0;
+        int first = pixel(img, i + DI[0], j + DJ[0]), previous = first;
+        count += first;
+        for (int k = 1; k <= 8; k++) {
+            int p = k == 8 ? first : pixel(img, i + DI[k], j + DJ[k]);
+            if (k < 8)
+                count += p;
+            if (previous == 0 && p == 1)
+                transitions++;
+            previous = p;
+        }
+        if (count < 2 || count > 6 || transitions != 1)
+            return false;
+
+        int n = pixel(img, i - 1, j), e = pixel(img, i, j + 1);
+        int s = pixel(img, i + 1, j), w = pixel(img, i, j - 1);
+        if (pass == 0)
+            return n * e * s == 0 && e * s * w == 0;
+        return n * e * w == 0 && n * s * w == 0;
+    }
+
+    private int pixel(byte[] img, int i, int j) {
+        return (i < 0 || i >= height || j < 0 || j >= width) ? 0 : img[i * width + j];
+    }
+
+    private int skeletonNeighbours(byte[] skeleton, int i, int j) {
+        int count = 0;
+        for (int k = 0; k < 8; k++)
+            count += pixel(skeleton, i + DI[k], j + DJ[k]);
+        return count;
+    }
+
+    private void findNodes(byte[] skeleton) {
+        for (int p = 0; p < owner.length; p++) {
+            owner[p] = NOT_SKELETON;
+            if (skeleton[p] == 1 && skeletonNeighbours(skeleton, p / width, p % width) != 2) {
+                owner[p] = -nodePixel.size() - 2;
+                nodePixel.add(p);
+            }
+        }
+    }
+
+    // Walks out of every node along each of its skeleton neighbours until another node is reached
+    private void traceEdges(byte[] skeleton) {
+        IntList run = new IntList();
+        for (int a = 0; a < nodeCount(); a++) {
+            int from = nodePixel.get(a);
+            int fi = from / width, fj = from % width;
+            for (int k = 0; k < 8; k++) {
+                int ni = fi + DI[k], nj = fj + DJ[k];
+                if (pixel(skeleton, ni, nj) == 0)
+                    continue;
+                int first = ni * width + nj;
+
+                // Two neighbouring nodes are joined directly, once
+                int b = nodeAt(first);
+                if (b != -1) {
+                    if (a < b)
+                        addEdge(a, b, new int[0], stepCost(from, first));
+                    continue;
+                }
+                // Already walked from the node at the other end
+                if (owner[first] >= 0)
+                    continue;
+
+                run.clear();
+                int previous = from, current = first, cost = stepCost(from, first);
+                while (nodeAt(current) == -1 && owner[current] < 0 && run.size() < owner.length) {
+                    owner[current] = edgeCount();
+                    run.add(current);
+                    int following = nextAlongRun(skeleton, current, previous);
+                    if (following == -1)
+                        break;
+                    cost += stepCost(current, following);
+                    previous = current;
+                    current = following;
+                }
+
+                b = nodeAt(current);
+                if (b != -1) {
+                    addEdge(a, b, run.toArray(), cost);
+                } else {
+                    // The run ran into another run instead of a node, so it's left off the graph
+                    for (int r = 0; r < run.size(); r++)
+                        owner[run.get(r)] = NOT_SKELETON;
+                }
+            }
+        }
+    }
+
+    // The skeleton neighbour of a two-neighbour pixel that isn't the one it was entered from
+    private int nextAlongRun(byte[] skeleton, int current, int previous) {
+        int ci = current / width, cj = current % width;
+        for (int k = 0; k < 8; k++) {
+            int ni = ci + DI[k], nj = cj + DJ[k];
+            if (pixel(skeleton, ni, nj) == 1 && ni * width + nj != previous)
+                return ni * width + nj;
+        }
+        return -1;
+    }
+
+    private void addEdge(int a, int b, int[] pixels, int cost) {
+        if (edgeCount() == edgePixels.length) {
+            int[][] grown = new int[edgePixels.length * 2][];
+            System.arraycopy(edgePixels, 0, grown, 0, edgePixels.length);
+            edgePixels = grown;
+        }
+        edgePixels[edgeCount()] = pixels;
+        edgeA.add(a);
+        edgeB.add(b);
+        edgeCost.add(cost);
+    }
+}
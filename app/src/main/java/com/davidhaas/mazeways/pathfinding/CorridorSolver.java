@@ -0,0 +1,327 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Name: CorridorSolver
+ * Purpose: Solves a maze on its CorridorGraph instead of on its pixels. The start and end are
+ * each joined to the nearest skeleton pixel by a short breadth-first search. If that pixel is in
+ * the middle of an edge, the edge is split there for this query only. Dijkstra's algorithm then
+ * runs over the few hundred graph nodes, and the chosen edges are expanded back into their pixels.
+ *
+ * The path follows the middle of the corridors, so it is close to but not always exactly the
+ * cheapest path through the pixels.
+ */
+public class CorridorSolver implements PathSolver {
+    private static final int[] DI = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DJ = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    private final CorridorGraph graph;
+    private final MazeGrid maze;
+    private final int width, height;
+    private final int start, end;
+    private SolveControl control = new SolveControl();
+    private final SolveStats stats = new SolveStats();
+    private int heapOperations;
+    private int[] pixelPath; // Every pixel from the start to the end, or null if there's no path
+
+    // The graph for one query: the real edges followed by the virtual ones that join the start (S)
+    // and the end (T) to it
+    private int nodeCount, edgeCount;
+    private int[] eA, eB, eCost;
+    private int[][] ePixels;
+
+    public CorridorSolver(CorridorGraph graph, int startI, int startJ, int endI, int endJ) {
+        this.graph = graph;
+        this.maze = graph.getMaze();
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.start = startI * width + startJ;
+        this.end = endI * width + endJ;
+    }
+
+    @Override
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    /**
+     * The corridor graph search is always Dijkstra's algorithm, so the weight is ignored.
+     */
+    @Override
+    public void setWeight(double weight) {
+        Heuristics.checkWeight(weight);
+    }
+
+    @Override
+    public void solve() {
+        if (maze.isWall(start / width, start % width) || maze.isWall(end / width, end % width))
+            return;
+
+        IntList startLink = linkToSkeleton(start);
+        IntList endLink = linkToSkeleton(end);
+        if (startLink == null || endLink == null)
+            return;
+
+        int s = startLink.get(startLink.size() - 1), t = endLink.get(endLink.size() - 1);
+        buildQueryGraph(s, t);
+        int[] predEdge = dijkstra(nodeCount - 2, nodeCount - 1);
+        if (predEdge == null)
+            return;
+
+        // Strings the pixels together: start to s, the edges from S to T, then t to the end
+        IntList pixels = new IntList(startLink.size() + endLink.size() + 256);
+        for (int k = 0; k < startLink.size(); k++)
+            pixels.add(startLink.get(k));
+
+        IntList edges = new IntList();
+        for (int node = nodeCount - 1; node != nodeCount - 2; ) {
+            int e = predEdge[node];
+            edges.add(e);
+            node = eA[e] == node ? eB[e] : eA[e];
+        }
+        int node = nodeCount - 2;
+        for (int k = edges.size() - 1; k >= 0; k--) {
+            int e = edges.get(k);
+            int[] run = ePixels[e];
+            if (eA[e] == node) {
+                for (int p : run)
+                    addPixel(pixels, p);
+                node = eB[e];
+            } else {
+                for (int r = run.length - 1; r >= 0; r--)
+                    addPixel(pixels, run[r]);
+                node = eA[e];
+            }
+            addPixel(pixels, nodePixel(node, s, t));
+        }
+        for (int k = endLink.size() - 1; k >= 0; k--)
+            addPixel(pixels, endLink.get(k));
+
+        pixelPath = pixels.toArray();
+    }
+
+    @Override
+    public PackedPath getPackedPath() {
+        return pixelPath == null ? null : new PackedPath(pixelPath, width);
+    }
+
+    @Override
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public int getExpandedCount() {
+        return stats.expanded;
+    }
+
+    @Override
+    public int getHeapOperations() {
+        return heapOperations;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return graph.getAllocatedBytes();
+    }
+
+    private static void addPixel(IntList pixels, int p) {
+        if (pixels.isEmpty() || pixels.get(pixels.size() - 1) != p)
+            pixels.add(p);
+    }
+
+    private int nodePixel(int node, int s, int t) {
+        if (node == nodeCount - 2)
+            return s;
+        if (node == nodeCount - 1)
+            return t;
+        return graph.nodePixel(node);
+    }
+
+    /**
+     * Breadth-first search over the free pixels around a point until it reaches the skeleton.
+     * @return The pixels from the point to the skeleton, or null if the skeleton isn't reachable
+     */
+    private IntList linkToSkeleton(int from) {
+        IntList queue = new IntList(), cameFrom = new IntList();
+        MazeGrid seen = new MazeGrid(width, height);
+        queue.add(from);
+        cameFrom.add(-1);
+        seen.setWall(from / width, from % width, true);
+
+        for (int head = 0; head < queue.size(); head++) {
+            int p = queue.get(head);
+            if (graph.isSkeleton(p)) {
+                IntList link = new IntList();
+                for (int q = head; q != -1; q = cameFrom.get(q))
+                    link.add(queue.get(q));
+                // Reverses it so that it runs from the point to the skeleton
+                for (int a = 0, b = link.size() - 1; a < b; a++, b--) {
+                    int swap = link.get(a);
+                    link.set(a, link.get(b));
+                    link.set(b, swap);
+                }
+                return link;
+            }
+
+            int pi = p / width, pj = p % width;
+            for (int k = 0; k < 8; k++) {
+                int ni = pi + DI[k], nj = pj + DJ[k];
+                if (ni < 0 || ni >= height || nj < 0 || nj >= width || maze.isWall(ni, nj) || seen.isWall(ni, nj))
+                    continue;
+                seen.setWall(ni, nj, true);
+                queue.add(ni * width + nj);
+                cameFrom.add(head);
+            }
+        }
+        return null;
+    }
+
+    // Copies the graph's edges and adds the virtual edges that join S to s and t to T
+    private void buildQueryGraph(int s, int t) {
+        int realEdges = graph.edgeCount();
+        nodeCount = graph.nodeCount() + 2;
+        eA = new int[realEdges + 5];
+        eB = new int[realEdges + 5];
+        eCost = new int[realEdges + 5];
+        ePixels = new int[realEdges + 5][];
+        for (int e = 0; e < realEdges; e++) {
+            eA[e] = graph.edgeA(e);
+            eB[e] = graph.edgeB(e);
+            eCost[e] = graph.edgeCost(e);
+            ePixels[e] = graph.edgePixels(e);
+        }
+        edgeCount = realEdges;
+
+        final int sNode = nodeCount - 2, tNode = nodeCount - 1;
+        attach(s, sNode);
+        attach(t, tNode);
+
+        // Both ends on the same edge, so the stretch of edge between them joins S to T directly
+        int edge = graph.edgeAt(s);
+        if (s == t) {
+            addQueryEdge(sNode, tNode, new int[0], 0);
+        } else if (edge != -1 && edge == graph.edgeAt(t)) {
+            int[] run = graph.edgePixels(edge);
+            int ks = indexOf(run, s), kt = indexOf(run, t);
+            int step = ks < kt ? 1 : -1;
+            int[] between = new int[Math.abs(kt - ks) - 1];
+            int cost = 0;
+            for (int k = ks, b = 0; k != kt; k += step) {
+                cost += graph.stepCost(run[k], run[k + step]);
+                if (k + step != kt)
+                    between[b++] = run[k + step];
+            }
+            addQueryEdge(sNode, tNode, between, cost);
+        }
+    }
+
+    // Joins S (or T) to the graph at a skeleton pixel, splitting the edge it lies inside. Each
+    // edge's pixels run from its A end to its B end, so the pieces keep the direction of the edge.
+    private void attach(int pixel, int virtualNode) {
+        int node = graph.nodeAt(pixel);
+        if (node != -1) {
+            addQueryEdge(node, virtualNode, new int[0], 0);
+            return;
+        }
+
+        int edge = graph.edgeAt(pixel);
+        int[] run = graph.edgePixels(edge);
+        int k = indexOf(run, pixel);
+        int a = graph.edgeA(edge), b = graph.edgeB(edge);
+
+        // The part of the edge from A up to the pixel, and from the pixel on to B
+        int[] toA = new int[k], toB = new int[run.length - k - 1];
+        System.arraycopy(run, 0, toA, 0, k);
+        System.arraycopy(run, k + 1, toB, 0, toB.length);
+        addQueryEdge(a, virtualNode, toA, runCost(graph.nodePixel(a), toA, pixel));
+        addQueryEdge(virtualNode, b, toB, runCost(pixel, toB, graph.nodePixel(b)));
+    }
+
+    private int runCost(int from, int[] run, int to) {
+        int cost = 0, previous = from;
+        for (int p : run) {
+            cost += graph.stepCost(previous, p);
+            previous = p;
+        }
+        return cost + graph.stepCost(previous, to);
+    }
+
+    private static int indexOf(int[] run, int pixel) {
+        for (int k = 0; k < run.length; k++) {
+            if (run[k] == pixel)
+                return k;
+        }
+        return -1;
+    }
+
+    private void addQueryEdge(int a, int b, int[] pixels, int cost) {
+        eA[edgeCount] = a;
+        eB[edgeCount] = b;
+        eCost[edgeCount] = cost;
+        ePixels[edgeCount++] = pixels;
+    }
+
+    /**
+     * Dijkstra's algorithm over the query graph.
+     * @return The edge each node was reached by, or null if the target wasn't reached
+     */
+    private int[] dijkstra(int source, int target) {
+        // Adjacency lists in compressed form: the edges of node n are adjEdge[adjStart[n]..adjStart[n + 1])
+        int[] adjStart = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            adjStart[eA[e] + 1]++;
+            adjStart[eB[e] + 1]++;
+        }
+        for (int n = 0; n < nodeCount; n++)
+            adjStart[n + 1] += adjStart[n];
+        int[] fill = adjStart.clone();
+        int[] adjEdge = new int[2 * edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            adjEdge[fill[eA[e]]++] = e;
+            adjEdge[fill[eB[e]]++] = e;
+        }
+
+        int[] dist = new int[nodeCount];
+        int[] predEdge = new int[nodeCount];
+        boolean[] done = new boolean[nodeCount];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        IndexedHeap open = new IndexedHeap(nodeCount);
+        dist[source] = 0;
+        predEdge[source] = -1;
+        open.push(source, 0, 0);
+        stats.generated(open.size());
+
+        while (!open.isEmpty()) {
+            int n = open.pop();
+            done[n] = true;
+            stats.closed++;
+            stats.expanded++;
+            if (n == target || control.checkpoint(stats.expanded, dist[n]))
+                break;
+
+            for (int k = adjStart[n]; k < adjStart[n + 1]; k++) {
+                int e = adjEdge[k];
+                int m = eA[e] == n ? eB[e] : eA[e];
+                if (done[m])
+                    continue;
+                int d = dist[n] + eCost[e];
+                if (d < dist[m]) {
+                    boolean queued = dist[m] != Integer.MAX_VALUE;
+                    dist[m] = d;
+                    predEdge[m] = e;
+                    if (queued) {
+                        open.decreaseKey(m, d, d);
+                        stats.decreaseKeys++;
+                    } else {
+                        open.push(m, d, d);
+                        stats.generated(open.size());
+                    }
+                }
+            }
+        }
+        heapOperations = open.getOperations();
+        return done[target] ? predEdge : null;
+    }
+}
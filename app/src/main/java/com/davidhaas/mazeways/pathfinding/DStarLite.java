@@ -0,0 +1,341 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Name: DStarLite
+ * Purpose: An incremental search (D* Lite) for editing a maze after it's been solved. It searches
+ * out from one entrance, the root, so every cell's cost is its distance to the root, and keeps
+ * those costs between solves. After walls are painted or erased, or the other entrance, the
+ * target, is moved, the next solve only repairs the costs the change affected instead of
+ * searching the whole maze again.
+ *
+ * Each cell has two costs: g, the cost it had when it was last expanded, and rhs, the cost its
+ * neighbours imply now. Cells whose two costs differ are on the open list. Keys are ordered by
+ * min(g, rhs) plus the distance to the target, then by min(g, rhs). When the target moves, the
+ * distance it moved is added to every new key instead of re-keying the open list.
+ *
+ * The root starts out as the end. Moving the root throws every cost away, so the search is
+ * restarted from the entrance that didn't move, which makes the rest of a drag cheap.
+ *
+ * Edits go straight into the maze passed to the constructor.
+ */
+public class DStarLite implements PathSolver {
+    private static final int INFINITY = Integer.MAX_VALUE / 4; // Leaves room to add a heuristic
+
+    // Row and column offsets of the 8 neighbours of a cell
+    private static final int[] DI = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DJ = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    private final MazeGrid maze;
+    private final int width, height;
+    private final int[] g, rhs;
+    private final IndexedHeap open;
+    private int target, root;
+    private boolean rootedAtStart;
+    private int lastTarget; // Where the target was when km was last raised
+    private int km;        // How far the target has moved in total since the search began
+    private SolveControl control = new SolveControl();
+    private SolveStats stats = new SolveStats();
+
+    /**
+     * @param maze The maze to search and edit
+     */
+    public DStarLite(MazeGrid maze, int startI, int startJ, int endI, int endJ) {
+        this.maze = maze;
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.g = new int[width * height];
+        this.rhs = new int[width * height];
+        this.open = new IndexedHeap(width * height);
+        this.target = startI * width + startJ;
+        this.root = endI * width + endJ;
+        restart();
+    }
+
+    @Override
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    /**
+     * The repairs rely on the heuristic never overestimating, so the weight isn't used and the
+     * path is always the shortest one.
+     */
+    @Override
+    public void setWeight(double weight) {
+        Heuristics.checkWeight(weight);
+    }
+
+    /**
+     * Finds the shortest path, repairing the costs left by the last solve after any edits.
+     */
+    @Override
+    public void solve() {
+        stats = new SolveStats();
+        while (!open.isEmpty()) {
+            int topKey = open.minKey(), topTie = open.minTie();
+            int startKey = key(target), startTie = -Math.min(g[target], rhs[target]);
+            if (!before(topKey, topTie, startKey, startTie) && g[target] == rhs[target])
+                return;
+
+            // Checked before the pop, so a stopped solve leaves every inconsistent cell queued
+            if (control.checkpoint(stats.expanded, topKey))
+                return;
+            int current = open.pop();
+            stats.expanded++;
+
+            int newKey = key(current), newTie = -Math.min(g[current], rhs[current]);
+            if (before(topKey, topTie, newKey, newTie)) {
+                // The target has moved since the cell was queued, so its key has grown
+                open.push(current, newKey, newTie);
+            } else if (g[current] > rhs[current]) {
+                g[current] = rhs[current];
+                stats.closed++;
+                lowered(current);
+            } else {
+                int oldCost = g[current];
+                g[current] = INFINITY;
+                updateCell(current);
+                raised(current, oldCost);
+            }
+        }
+    }
+
+    /**
+     * Paints or erases a wall. The costs are repaired by the next solve, so a whole brush stroke
+     * can be applied before solving again.
+     * @return Whether the cell changed
+     */
+    public boolean setWall(int i, int j, boolean wall) {
+        if (maze.isWall(i, j) == wall)
+            return false;
+        maze.setWall(i, j, wall);
+
+        int cell = i * width + j;
+        updateCell(cell);
+        updateNeighbours(cell);
+        return true;
+    }
+
+    /**
+     * Moves the start. This is cheap unless the search is rooted at the start, in which case it
+     * restarts rooted at the end.
+     */
+    public void moveStart(int i, int j) {
+        moveEntrance(i * width + j, true);
+    }
+
+    /**
+     * Moves the end. This is cheap unless the search is rooted at the end, in which case it
+     * restarts rooted at the start.
+     */
+    public void moveEnd(int i, int j) {
+        moveEntrance(i * width + j, false);
+    }
+
+    /**
+     * @return The start's cell index, i * width + j.
+     */
+    public int getStart() {
+        return rootedAtStart ? root : target;
+    }
+
+    /**
+     * @return The end's cell index, i * width + j.
+     */
+    public int getEnd() {
+        return rootedAtStart ? target : root;
+    }
+
+    public MazeGrid getMaze() {
+        return maze;
+    }
+
+    /**
+     * Walks from the target to the root, always to the neighbour that's closest to the root, and
+     * turns the path around if the root is the start.
+     */
+    @Override
+    public PackedPath getPackedPath() {
+        if (g[target] >= INFINITY || g[target] != rhs[target])
+            return null;
+
+        IntList cells = new IntList();
+        cells.add(target);
+        for (int current = target; current != root; ) {
+            current = cheapestNeighbour(current);
+            if (current == -1 || cells.size() > width * height)
+                return null;
+            cells.add(current);
+        }
+
+        int[] path = cells.toArray();
+        for (int a = 0, b = path.length - 1; rootedAtStart && a < b; a++, b--) {
+            int swap = path[a];
+            path[a] = path[b];
+            path[b] = swap;
+        }
+        return new PackedPath(path, width);
+    }
+
+    @Override
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public int getExpandedCount() {
+        return stats.expanded;
+    }
+
+    @Override
+    public int getHeapOperations() {
+        return open.getOperations();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return 8L * g.length + open.getAllocatedBytes();
+    }
+
+    private void moveEntrance(int moved, boolean start) {
+        if (start != rootedAtStart) {
+            // The costs are all distances to the root, so they stay valid
+            km += distance(lastTarget, moved);
+            lastTarget = moved;
+            target = moved;
+        } else {
+            root = target;
+            target = moved;
+            rootedAtStart = !rootedAtStart;
+            restart();
+        }
+    }
+
+    // Forgets every cost and queues the root
+    private void restart() {
+        Arrays.fill(g, INFINITY);
+        Arrays.fill(rhs, INFINITY);
+        open.clear();
+        km = 0;
+        lastTarget = target;
+        updateCell(root);
+    }
+
+    // Recomputes a cell's rhs from all of its neighbours, for when the cheapest one may have got dearer
+    private void updateCell(int cell) {
+        int i = cell / width, j = cell - i * width;
+        if (maze.isWall(i, j))
+            rhs[cell] = INFINITY;
+        else if (cell == root)
+            rhs[cell] = 0;
+        else
+            rhs[cell] = cheapestCost(cell);
+        queue(cell);
+    }
+
+    // A cell's cost went down, which can only lower its neighbours' rhs through it
+    private void lowered(int cell) {
+        int ci = cell / width, cj = cell - ci * width;
+        for (int k = 0; k < 8; k++) {
+            int ni = ci + DI[k], nj = cj + DJ[k];
+            if (ni < 0 || ni >= height || nj < 0 || nj >= width || maze.isWall(ni, nj))
+                continue;
+            int next = ni * width + nj, cost = g[cell] + stepCost(k);
+            if (cost < rhs[next] && next != root) {
+                rhs[next] = cost;
+                queue(next);
+            }
+        }
+    }
+
+    // A cell's cost went up, so only the neighbours whose rhs came through it need recomputing
+    private void raised(int cell, int oldCost) {
+        int ci = cell / width, cj = cell - ci * width;
+        for (int k = 0; k < 8; k++) {
+            int ni = ci + DI[k], nj = cj + DJ[k];
+            if (ni < 0 || ni >= height || nj < 0 || nj >= width || maze.isWall(ni, nj))
+                continue;
+            int next = ni * width + nj;
+            if (rhs[next] == oldCost + stepCost(k))
+                updateCell(next);
+        }
+    }
+
+    // Puts a cell on the open list if its two costs differ, and takes it off if they agree
+    private void queue(int cell) {
+        boolean queued = open.contains(cell);
+        if (g[cell] != rhs[cell]) {
+            int key = key(cell), tie = -Math.min(g[cell], rhs[cell]);
+            if (queued) {
+                open.update(cell, key, tie);
+                stats.decreaseKeys++;
+            } else {
+                open.push(cell, key, tie);
+                stats.generated(open.size());
+            }
+        } else if (queued) {
+            open.remove(cell);
+        }
+    }
+
+    private void updateNeighbours(int cell) {
+        int ci = cell / width, cj = cell - ci * width;
+        for (int k = 0; k < 8; k++) {
+            int ni = ci + DI[k], nj = cj + DJ[k];
+            if (ni >= 0 && ni < height && nj >= 0 && nj < width)
+                updateCell(ni * width + nj);
+        }
+    }
+
+    // The lowest cost to the root through any open neighbour, or INFINITY
+    private int cheapestCost(int cell) {
+        int ci = cell / width, cj = cell - ci * width;
+        int best = INFINITY;
+        for (int k = 0; k < 8; k++) {
+            int ni = ci + DI[k], nj = cj + DJ[k];
+            if (ni < 0 || ni >= height || nj < 0 || nj >= width || maze.isWall(ni, nj))
+                continue;
+            int next = g[ni * width + nj];
+            if (next < INFINITY)
+                best = Math.min(best, next + stepCost(k));
+        }
+        return best;
+    }
+
+    // The neighbour the cheapest cost goes through, or -1 if none leads to the root
+    private int cheapestNeighbour(int cell) {
+        int ci = cell / width, cj = cell - ci * width;
+        int best = INFINITY, bestCell = -1;
+        for (int k = 0; k < 8; k++) {
+            int ni = ci + DI[k], nj = cj + DJ[k];
+            if (ni < 0 || ni >= height || nj < 0 || nj >= width || maze.isWall(ni, nj))
+                continue;
+            int next = g[ni * width + nj];
+            if (next < INFINITY && next + stepCost(k) < best) {
+                best = next + stepCost(k);
+                bestCell = ni * width + nj;
+            }
+        }
+        return bestCell;
+    }
+
+    private int key(int cell) {
+        return Math.min(g[cell], rhs[cell]) + distance(cell, target) + km;
+    }
+
+    private int distance(int a, int b) {
+        int ai = a / width, bi = b / width;
+        return Heuristics.octile(Math.abs(ai - bi), Math.abs(a - ai * width - (b - bi * width)));
+    }
+
+    private static int stepCost(int k) {
+        return (DI[k] != 0 && DJ[k] != 0) ? Heuristics.DIAGONAL_COST : Heuristics.V_H_COST;
+    }
+
+    // Whether a key and tie come before another, with the tie holding minus min(g, rhs)
+    private static boolean before(int key1, int tie1, int key2, int tie2) {
+        return key1 < key2 || (key1 == key2 && tie1 > tie2);
+    }
+}
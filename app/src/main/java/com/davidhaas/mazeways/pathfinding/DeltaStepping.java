@@ -0,0 +1,278 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Name: DeltaStepping
+ * Purpose: Dijkstra's algorithm spread over several cores by delta-stepping. Cells are kept in
+ * buckets DELTA wide. Every step costs at least DELTA, so relaxing the cells of one bucket can only
+ * reach the next two buckets, and all the cells of a bucket are final once the buckets before it
+ * are done. Each bucket is split between the threads, which relax their share at once and collect
+ * the cells they lower in buffers of their own, so the only shared writes are the compare-and-set
+ * of a cell's distance. Between buckets the buffers are merged on the calling thread.
+ *
+ * No heuristic guides the search, so it pays off on the large, twisty mazes where A* expands most
+ * of the maze anyway. The path is read off the final distances instead of parent pointers, which
+ * the threads would race to set, and always costs the same as the sequential engines' paths.
+ */
+public class DeltaStepping implements PathSolver {
+    private static final String TAG = "DeltaStepping";
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private static final int DELTA = Heuristics.V_H_COST; // The width of a bucket, the cheapest step
+    private static final int MIN_CHUNK = 512; // Buckets smaller than this aren't worth another thread
+
+    // Row and column offsets of the 8 neighbours of a cell
+    private static final int[] DI = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DJ = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    private final MazeGrid maze;
+    private final int width, height;
+    private final int start, end;
+    private final AtomicIntegerArray dist;
+    private final int[] bucketOf; // The bucket a cell was last settled in, so it's only expanded once
+    private final Relaxer[] relaxers;
+    private SolveControl control = new SolveControl();
+    private final SolveStats stats = new SolveStats();
+
+    /**
+     * @param threaded Whether to split the buckets between the cores, or search on this thread
+     */
+    public DeltaStepping(MazeGrid maze, int startI, int startJ, int endI, int endJ, boolean threaded) {
+        this.maze = maze;
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.start = startI * width + startJ;
+        this.end = endI * width + endJ;
+        this.dist = new AtomicIntegerArray(width * height);
+        this.bucketOf = new int[width * height];
+        this.relaxers = new Relaxer[threaded ? SolverPool.THREADS : 1];
+        for (int t = 0; t < relaxers.length; t++)
+            relaxers[t] = new Relaxer();
+    }
+
+    @Override
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    /**
+     * Delta-stepping has no heuristic to weight, so weights other than 1 are ignored.
+     */
+    @Override
+    public void setWeight(double weight) {
+        Heuristics.checkWeight(weight);
+        if (weight != 1)
+            Log.w(TAG, "setWeight: Ignoring weight " + weight + ", delta-stepping is always optimal");
+    }
+
+    @Override
+    public void solve() {
+        if (maze.isWall(start / width, start % width) || maze.isWall(end / width, end % width))
+            return;
+
+        for (int c = 0; c < width * height; c++) {
+            dist.set(c, INFINITY);
+            bucketOf[c] = -1;
+        }
+        dist.set(start, 0);
+
+        IntList bucket = new IntList(), pending = new IntList();
+        pending.add(start);
+        try {
+            for (int k = 0; ; k++) {
+                // The cells still in bucket k, each once. Relaxing bucket k - 1 left them in the
+                // near buffers and bucket k - 2 left them in pending.
+                bucket.clear();
+                if (!settle(pending, k, bucket))
+                    return;
+                pending.clear();
+                for (Relaxer relaxer : relaxers) {
+                    if (!settle(relaxer.near, k, bucket))
+                        return;
+                    for (int f = 0; f < relaxer.far.size(); f++)
+                        pending.add(relaxer.far.get(f));
+                    relaxer.near.clear();
+                    relaxer.far.clear();
+                }
+                if (bucketOf[end] != -1 || (bucket.isEmpty() && pending.isEmpty()))
+                    break;
+
+                stats.expanded += bucket.size();
+                stats.closed += bucket.size();
+                stats.peakOpen = Math.max(stats.peakOpen, bucket.size() + pending.size());
+                if (!relax(bucket, k))
+                    return;
+            }
+        } finally {
+            for (Relaxer relaxer : relaxers) {
+                stats.generated += relaxer.generated;
+                relaxer.clear();
+            }
+        }
+        Log.i(TAG, "solve: Expanded " + stats.expanded + " on " + relaxers.length + " threads, path cost "
+                + (bucketOf[end] == -1 ? -1 : dist.get(end)));
+    }
+
+    @Override
+    public PackedPath getPackedPath() {
+        if (bucketOf[end] == -1)
+            return null;
+
+        // Steps back to any neighbour whose distance accounts for the step, which is always on a
+        // shortest path
+        IntList cells = new IntList();
+        cells.add(end);
+        for (int current = end; current != start; ) {
+            int ci = current / width, cj = current - ci * width, d = dist.get(current);
+            for (int k = 0; k < 8; k++) {
+                int ni = ci + DI[k], nj = cj + DJ[k];
+                if (ni < 0 || ni >= height || nj < 0 || nj >= width)
+                    continue;
+                int previous = ni * width + nj, pd = dist.get(previous);
+                if (pd != INFINITY && pd + stepCost(k) == d && !maze.isWall(ni, nj)) {
+                    current = previous;
+                    break;
+                }
+            }
+            cells.add(current);
+        }
+
+        int[] path = cells.toArray();
+        for (int a = 0, b = path.length - 1; a < b; a++, b--) {
+            int swap = path[a];
+            path[a] = path[b];
+            path[b] = swap;
+        }
+        return new PackedPath(path, width);
+    }
+
+    @Override
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public int getExpandedCount() {
+        return stats.expanded;
+    }
+
+    /**
+     * There's no open list, only the bucket buffers.
+     */
+    @Override
+    public int getHeapOperations() {
+        return 0;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return 8L * width * height;
+    }
+
+    /**
+     * Moves the cells of a buffer that still belong to bucket k, and haven't been moved yet, into
+     * it. A cell whose distance went down after it was buffered is skipped, since it's in a
+     * nearer buffer too.
+     * @return False if the SolveControl stopped the search
+     */
+    private boolean settle(IntList cells, int k, IntList bucket) {
+        for (int c = 0; c < cells.size(); c++) {
+            int cell = cells.get(c), d = dist.get(cell);
+            if (bucketOf[cell] == -1 && d / DELTA == k) {
+                bucketOf[cell] = k;
+                bucket.add(cell);
+                if (control.checkpoint(stats.expanded + bucket.size(), d))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Relaxes the neighbours of every cell in bucket k, split between the relaxers.
+     * @return False if the SolveControl stopped the search or the thread was interrupted
+     */
+    private boolean relax(IntList bucket, int k) {
+        int chunks = Math.min(relaxers.length, (bucket.size() + MIN_CHUNK - 1) / MIN_CHUNK);
+        if (chunks <= 1) {
+            relaxers[0].set(bucket, k, 0, bucket.size()).call();
+            return true;
+        }
+
+        int chunkSize = (bucket.size() + chunks - 1) / chunks;
+        List<FutureTask<Void>> pieces = new ArrayList<>(chunks - 1);
+        for (int t = 1; t < chunks; t++) {
+            int from = t * chunkSize;
+            pieces.add(SolverPool.fork(relaxers[t].set(bucket, k, from, Math.min(bucket.size(), from + chunkSize))));
+        }
+        relaxers[0].set(bucket, k, 0, chunkSize).call();
+        try {
+            SolverPool.join(pieces);
+        } catch (InterruptedException e) {
+            control.cancel();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    private static int stepCost(int k) {
+        return (DI[k] != 0 && DJ[k] != 0) ? Heuristics.DIAGONAL_COST : Heuristics.V_H_COST;
+    }
+
+    /**
+     * Relaxes one share of a bucket. The cells it lowers go in its own buffers: near for bucket
+     * k + 1 and far for bucket k + 2, the only two a step can reach.
+     */
+    private class Relaxer implements Callable<Void> {
+        private final IntList near = new IntList(), far = new IntList();
+        private IntList bucket;
+        private int k, from, to;
+        private int generated;
+
+        private void clear() {
+            near.clear();
+            far.clear();
+            generated = 0;
+        }
+
+        private Relaxer set(IntList bucket, int k, int from, int to) {
+            this.bucket = bucket;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        @Override
+        public Void call() {
+            for (int b = from; b < to; b++) {
+                int current = bucket.get(b), base = dist.get(current);
+                int ci = current / width, cj = current - ci * width;
+                for (int s = 0; s < 8; s++) {
+                    int ni = ci + DI[s], nj = cj + DJ[s];
+                    if (ni < 0 || ni >= height || nj < 0 || nj >= width || maze.isWall(ni, nj))
+                        continue;
+                    int next = ni * width + nj, cost = base + stepCost(s);
+
+                    // Lowers the distance unless another thread got it lower first
+                    int old;
+                    while ((old = dist.get(next)) > cost) {
+                        if (dist.compareAndSet(next, old, cost)) {
+                            (cost / DELTA == k + 1 ? near : far).add(next);
+                            generated++;
+                            break;
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Name: DistanceField
+ * Purpose: The distance from the start to every pixel of the maze, found once with Dijkstra over
+ * a bucket queue and kept. The path to any pixel is then a walk back along the stored steps, in
+ * time proportional to its length, so tapping around the maze for routes needs no search at all.
+ * The distances also give a heat map of how far away each part of the maze is.
+ *
+ * Each pixel keeps the step that reached it as one byte rather than its parent's four byte index.
+ */
+public class DistanceField {
+    public static final int UNREACHABLE = -1;
+    private static final byte NO_STEP = -1;
+
+    // Row and column offsets of the 8 neighbours of a cell
+    private static final int[] DI = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DJ = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    private final MazeGrid maze;
+    private final int width, height;
+    private final int start;
+    private final int[] dist; // UNREACHABLE for every pixel the start can't reach
+    private final byte[] step; // The neighbour offset that last moved onto each pixel, or NO_STEP
+    private int maxDistance;
+    private final SolveStats stats = new SolveStats();
+
+    /**
+     * @param maze The maze, which mustn't change while the field is in use
+     */
+    public DistanceField(MazeGrid maze, int startI, int startJ) {
+        this.maze = maze;
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.start = startI * width + startJ;
+        this.dist = new int[width * height];
+        this.step = new byte[width * height];
+    }
+
+    /**
+     * Finds the distance to every pixel the start can reach.
+     * @param control Stops the search early, which leaves the field incomplete
+     * @return Whether the field is complete
+     */
+    public boolean compute(SolveControl control) {
+        Arrays.fill(dist, UNREACHABLE);
+        Arrays.fill(step, NO_STEP);
+        maxDistance = 0;
+        if (maze.isWall(start / width, start % width))
+            return true;
+
+        SolverContext context = SolverContext.acquire(width * height);
+        try {
+            OpenList open = context.bucketQueue();
+            dist[start] = 0;
+            context.open(start);
+            open.push(start, 0, 0);
+            stats.generated(open.size());
+
+            while (!open.isEmpty()) {
+                int current = open.pop();
+                context.close(current);
+                stats.closed++;
+                stats.expanded++;
+                maxDistance = dist[current];
+                if (control.checkpoint(stats.expanded, dist[current]))
+                    return false;
+
+                int ci = current / width, cj = current - ci * width;
+                for (int k = 0; k < 8; k++) {
+                    int ni = ci + DI[k], nj = cj + DJ[k];
+                    if (ni < 0 || ni >= height || nj < 0 || nj >= width || maze.isWall(ni, nj))
+                        continue;
+                    int next = ni * width + nj;
+                    if (context.isClosed(next))
+                        continue;
+
+                    int cost = dist[current] + ((DI[k] != 0 && DJ[k] != 0) ? Heuristics.DIAGONAL_COST : Heuristics.V_H_COST);
+                    if (!context.isOpen(next)) {
+                        context.open(next);
+                        open.push(next, cost, 0);
+                        stats.generated(open.size());
+                    } else if (cost < dist[next]) {
+                        open.decreaseKey(next, cost, 0);
+                        stats.decreaseKeys++;
+                    } else {
+                        continue;
+                    }
+                    dist[next] = cost;
+                    step[next] = (byte) k;
+                }
+            }
+            return true;
+        } finally {
+            SolverContext.release(context);
+        }
+    }
+
+    /**
+     * @return The start's cell index, i * width + j.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    public MazeGrid getMaze() {
+        return maze;
+    }
+
+    /**
+     * @return The cost of the shortest path from the start, or UNREACHABLE.
+     */
+    public int getDistance(int i, int j) {
+        return dist[i * width + j];
+    }
+
+    /**
+     * @return The distance of the farthest pixel the start can reach.
+     */
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Walks back from a pixel to the start along the stored steps.
+     * @return The shortest path from the start to the pixel, or null if it can't be reached
+     */
+    public PackedPath pathTo(int i, int j) {
+        int end = i * width + j;
+        if (dist[end] == UNREACHABLE)
+            return null;
+
+        int length = 1;
+        for (int c = end; c != start; c = previous(c))
+            length++;
+
+        int[] cells = new int[length];
+        int c = end;
+        for (int k = length - 1; k > 0; k--) {
+            cells[k] = c;
+            c = previous(c);
+        }
+        cells[0] = start;
+        return new PackedPath(cells, width);
+    }
+
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    // The cell the stored step onto a cell came from
+    private int previous(int cell) {
+        int k = step[cell];
+        return cell - DI[k] * width - DJ[k];
+    }
+}
@@ -0,0 +1,241 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Name: EntranceFinder
+ * Purpose: Finds the maze's entrances by listing every opening in its outer wall. Each side is
+ * scanned for its wall profile, the distance from the edge of the image to the first wall along
+ * each line. The outer wall is where the profile runs smoothly, and an opening is a stretch where
+ * it jumps deeper, because the scan went through a gap, and comes back. Its entrance is placed in
+ * the gap, on the line the outer wall would have followed.
+ *
+ * Everything between the image's edges and the outer wall is then walled off, so that a path
+ * can't leave by one opening and come back in by another, and the components are labelled once.
+ * Every pair of openings in the same component is a candidate, ranked by how clear both openings
+ * are and how far apart they are, since a maze's entrances are usually on opposite sides.
+ */
+public class EntranceFinder {
+    private static final String TAG = "EntranceFinder";
+    private static final double MARGIN = .03;       // The ends of each side that aren't searched, as a fraction of it
+    private static final double MIN_JUMP = .02;      // How much deeper than the wall a gap must reach, as a fraction of the image
+    private static final double MIN_WIDTH = .01;     // The narrowest opening, as a fraction of the side
+    private static final int MAX_CANDIDATES = 10;
+
+    /**
+     * A pair of openings that can be joined by a path, with how likely it is to be the entrances.
+     */
+    public static final class Candidate {
+        private final int startI, startJ, endI, endJ;
+        private final double confidence;
+
+        private Candidate(int startI, int startJ, int endI, int endJ, double confidence) {
+            this.startI = startI;
+            this.startJ = startJ;
+            this.endI = endI;
+            this.endJ = endJ;
+            this.confidence = confidence;
+        }
+
+        public int getStartI() {
+            return startI;
+        }
+
+        public int getStartJ() {
+            return startJ;
+        }
+
+        public int getEndI() {
+            return endI;
+        }
+
+        public int getEndJ() {
+            return endJ;
+        }
+
+        /**
+         * @return A score from 0 to 1, higher for clearer openings that are farther apart.
+         */
+        public double getConfidence() {
+            return confidence;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + startI + ", " + startJ + ") to (" + endI + ", " + endJ + ") at "
+                    + String.format("%.2f", confidence);
+        }
+    }
+
+    private final BoundaryProfiles profiles;
+    private final int width, height;
+    private final MazeGrid sealed;
+    private final ComponentLabeler labeler;
+    private final IntList openings = new IntList(); // The pixel of each opening's entrance
+    private final List<Double> strengths = new ArrayList<>();
+    private final List<Candidate> candidates = new ArrayList<>();
+
+    /**
+     * Finds the openings and ranks the pairs of them.
+     * @param maze The binary maze, which isn't changed
+     */
+    public EntranceFinder(MazeGrid maze) {
+        this(new BoundaryProfiles(maze));
+    }
+
+    /**
+     * Finds the openings from profiles that have already been made.
+     */
+    EntranceFinder(BoundaryProfiles profiles) {
+        this.profiles = profiles;
+        this.width = profiles.getMaze().getWidth();
+        this.height = profiles.getMaze().getHeight();
+        this.sealed = new MazeGrid(profiles.getMaze());
+
+        final long startTime = System.nanoTime();
+        for (int side = BoundaryProfiles.TOP; side <= BoundaryProfiles.RIGHT; side++)
+            scanSide(side);
+        labeler = new ComponentLabeler(sealed);
+        rankPairs();
+
+        Log.i(TAG, "EntranceFinder: " + openings.size() + " openings, " + candidates.size()
+                + " candidates in " + (System.nanoTime() - startTime) / 1000000 + " ms, best "
+                + (candidates.isEmpty() ? "none" : candidates.get(0)));
+    }
+
+    /**
+     * @return The pairs of openings that are connected, best first. Empty if no two are.
+     */
+    public List<Candidate> getCandidates() {
+        return Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * @return A copy of the maze with everything outside the outer wall turned into walls.
+     */
+    public MazeGrid getSealedMaze() {
+        return sealed;
+    }
+
+    /**
+     * @return The components of the sealed maze.
+     */
+    public ComponentLabeler getLabeler() {
+        return labeler;
+    }
+
+    // Finds the openings along one side and walls off the outside of it
+    private void scanSide(int side) {
+        int length = profiles.length(side), across = profiles.across(side);
+        int[] raw = new int[length];
+        for (int p = 0; p < length; p++)
+            raw[p] = profiles.depth(side, p);
+        int[] depth = median(raw);
+
+        int from = (int) (length * MARGIN), to = (int) (length * (1 - MARGIN));
+        int jump = Math.max(3, (int) (across * MIN_JUMP));
+        int minWidth = Math.max(2, (int) (length * MIN_WIDTH));
+        int[] wallLine = depth.clone(); // Where the outer wall is, filled in across the openings
+
+        // The wall line is only known after a position that isn't in a gap, so a gap that starts
+        // before it, or doesn't end before the far margin, is the space around the maze instead
+        int line = -1;
+        for (int p = from; p < to; p++) {
+            if (line == -1 || depth[p] <= line + jump) {
+                line = depth[p];
+                continue;
+            }
+
+            int end = p;
+            while (end < to && depth[end] > line + jump)
+                end++;
+            if (end == to)
+                break;
+
+            int exitLine = depth[end];
+            long reach = 0;
+            for (int q = p; q < end; q++) {
+                wallLine[q] = line + (exitLine - line) * (q - p + 1) / (end - p + 1);
+                reach += depth[q] - wallLine[q];
+            }
+            if (end - p >= minWidth) {
+                int middle = (p + end) / 2;
+                openings.add(profiles.pixel(side, middle, wallLine[middle]));
+                strengths.add(Math.min(1, (double) reach / (end - p) / (4 * jump)));
+            }
+            p = end - 1;
+        }
+
+        for (int p = 0; p < length; p++)
+            seal(side, p, wallLine[p]);
+    }
+
+    // Smooths a profile with the median of each 5 positions, so specks of noise in front of the
+    // wall, or in an opening, don't break up the line
+    private static int[] median(int[] profile) {
+        int[] smooth = new int[profile.length], window = new int[5];
+        for (int p = 0; p < profile.length; p++) {
+            int n = 0;
+            for (int q = Math.max(0, p - 2); q <= Math.min(profile.length - 1, p + 2); q++)
+                window[n++] = profile[q];
+            Arrays.sort(window, 0, n);
+            smooth[p] = window[n / 2];
+        }
+        return smooth;
+    }
+
+    // Walls off the pixels of a line from the edge of a side up to, but not including, a depth
+    private void seal(int side, int p, int d) {
+        switch (side) {
+            case BoundaryProfiles.TOP:
+                for (int i = 0; i < d; i++)
+                    sealed.setWall(i, p, true);
+                break;
+            case BoundaryProfiles.BOTTOM:
+                for (int i = height - 1; i > height - 1 - d; i--)
+                    sealed.setWall(i, p, true);
+                break;
+            case BoundaryProfiles.LEFT:
+                sealed.fillRow(p, 0, d);
+                break;
+            default:
+                sealed.fillRow(p, width - d, width);
+                break;
+        }
+    }
+
+    // Scores every connected pair of openings and keeps the best
+    private void rankPairs() {
+        double diagonal = Math.hypot(width, height);
+        for (int a = 0; a < openings.size(); a++) {
+            for (int b = a + 1; b < openings.size(); b++) {
+                int pa = openings.get(a), pb = openings.get(b);
+                int ai = pa / width, aj = pa % width, bi = pb / width, bj = pb % width;
+                if (!labeler.isSameComponent(ai, aj, bi, bj))
+                    continue;
+
+                double confidence = strengths.get(a) * strengths.get(b) * Math.hypot(ai - bi, aj - bj) / diagonal;
+                // The start is whichever entrance is nearer the top left
+                if (ai + aj <= bi + bj)
+                    candidates.add(new Candidate(ai, aj, bi, bj, confidence));
+                else
+                    candidates.add(new Candidate(bi, bj, ai, aj, confidence));
+            }
+        }
+
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate x, Candidate y) {
+                return Double.compare(y.confidence, x.confidence);
+            }
+        });
+        while (candidates.size() > MAX_CANDIDATES)
+            candidates.remove(candidates.size() - 1);
+    }
+}
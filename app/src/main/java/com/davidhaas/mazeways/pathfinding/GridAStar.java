@@ -0,0 +1,149 @@
+package com.davidhaas.mazeways.pathfinding;
+
+/**
+ * Name: GridAStar
+ * Purpose: An A* engine that keeps all of its per-cell state in flat primitive arrays indexed by
+ * i * width + j rather than allocating a Cell for every pixel of the maze.
+ */
+public class GridAStar implements PathSolver {
+    // Row and column offsets of the 8 neighbours of a cell
+    private static final int[] DI = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DJ = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    private final MazeGrid maze;
+    private final int width, height;
+    private final SolverContext context;
+    private final int[] gCost;
+    private final int[] parent;
+    private final OpenList open;
+    private final int start, end;
+    private final int endI, endJ;
+    private double weight = 1;
+    private SolveControl control = new SolveControl();
+    private final SolveStats stats = new SolveStats();
+
+    public GridAStar(MazeGrid maze, int startI, int startJ, int endI, int endJ) {
+        this(maze, new IndexedHeap(maze.getWidth() * maze.getHeight()), startI, startJ, endI, endJ);
+    }
+
+    /**
+     * @param open The empty open list to search with, sized for every cell of the maze
+     */
+    GridAStar(MazeGrid maze, OpenList open, int startI, int startJ, int endI, int endJ) {
+        this(maze, new SolverContext(maze.getWidth() * maze.getHeight()), open, startI, startJ, endI, endJ);
+    }
+
+    /**
+     * @param context The state to search with, which is reset when the search starts and holds
+     *                the path until the next reset
+     * @param open The empty open list to search with, usually one of the context's
+     */
+    GridAStar(MazeGrid maze, SolverContext context, OpenList open, int startI, int startJ, int endI, int endJ) {
+        this.maze = maze;
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.context = context;
+        this.gCost = context.gCost;
+        this.parent = context.parent;
+        this.open = open;
+        this.start = startI * width + startJ;
+        this.end = endI * width + endJ;
+        this.endI = endI;
+        this.endJ = endJ;
+    }
+
+    @Override
+    public void solve() {
+        context.reset();
+        if (maze.isWall(start / width, start % width))
+            return;
+
+        gCost[start] = 0;
+        parent[start] = -1;
+        context.open(start);
+        open.push(start, heuristic(start), 0);
+        stats.generated(open.size());
+
+        while (!open.isEmpty()) {
+            int current = open.pop();
+            context.close(current);
+            stats.closed++;
+            stats.expanded++;
+
+            if (current == end || control.checkpoint(stats.expanded, gCost[current] + heuristic(current)))
+                return;
+
+            int ci = current / width, cj = current - ci * width;
+            for (int k = 0; k < 8; k++) {
+                int ni = ci + DI[k], nj = cj + DJ[k];
+                if (ni < 0 || ni >= height || nj < 0 || nj >= width || maze.isWall(ni, nj))
+                    continue;
+                int cost = (DI[k] != 0 && DJ[k] != 0) ? Heuristics.DIAGONAL_COST : Heuristics.V_H_COST;
+                relax(current, ni * width + nj, gCost[current] + cost);
+            }
+        }
+    }
+
+    @Override
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    @Override
+    public void setWeight(double weight) {
+        Heuristics.checkWeight(weight);
+        this.weight = weight;
+    }
+
+    @Override
+    public PackedPath getPackedPath() {
+        if (!context.isClosed(end))
+            return null;
+        return PackedPath.fromParents(parent, end, width);
+    }
+
+    @Override
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public int getExpandedCount() {
+        return stats.expanded;
+    }
+
+    @Override
+    public int getHeapOperations() {
+        return open.getOperations();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return context.getAllocatedBytes() + open.getAllocatedBytes();
+    }
+
+    // Updates a neighbour's cost if the path through current is cheaper than its best so far
+    private void relax(int current, int next, int cost) {
+        if (context.isClosed(next))
+            return;
+
+        if (!context.isOpen(next)) {
+            gCost[next] = cost;
+            parent[next] = current;
+            context.open(next);
+            open.push(next, cost + heuristic(next), cost);
+            stats.generated(open.size());
+        } else if (cost < gCost[next]) {
+            gCost[next] = cost;
+            parent[next] = current;
+            open.decreaseKey(next, cost + heuristic(next), cost);
+            stats.decreaseKeys++;
+        }
+    }
+
+    // Computed when a cell is first reached instead of up front for every cell
+    private int heuristic(int cell) {
+        int i = cell / width, j = cell - i * width;
+        return Heuristics.weighted(Heuristics.octile(Math.abs(i - endI), Math.abs(j - endJ)), weight);
+    }
+}
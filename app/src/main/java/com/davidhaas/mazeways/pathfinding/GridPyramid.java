@@ -0,0 +1,87 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Name: GridPyramid
+ * Purpose: A stack of ever smaller copies of a maze. Each level halves the one below it, and a
+ * cell is a wall if any of the 2x2 cells it covers is a wall, so shrinking never opens a gap in a
+ * wall. Any path through free cells of a level is therefore also free at every finer level.
+ */
+public class GridPyramid {
+    private static final String TAG = "GridPyramid";
+
+    private final List<MazeGrid> levels = new ArrayList<>();
+
+    /**
+     * @param maze The full resolution maze, which becomes level 0
+     * @param minSize Levels stop being added once a side would be shorter than this
+     */
+    public GridPyramid(MazeGrid maze, int minSize) {
+        levels.add(maze);
+        MazeGrid level = maze;
+        while (level.getWidth() / 2 >= minSize && level.getHeight() / 2 >= minSize) {
+            level = halve(level);
+            levels.add(level);
+        }
+        Log.i(TAG, "GridPyramid: " + levels.size() + " levels, coarsest "
+                + level.getWidth() + "x" + level.getHeight());
+    }
+
+    /**
+     * @return The number of levels, including the full resolution one.
+     */
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    /**
+     * @param level The level, where 0 is the full resolution maze
+     * @return The maze at that level, 2^level times smaller than the original on each side.
+     */
+    public MazeGrid getLevel(int level) {
+        return levels.get(level);
+    }
+
+    /**
+     * @return The bytes held by the levels above level 0.
+     */
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (int k = 1; k < levels.size(); k++)
+            bytes += levels.get(k).getByteSize();
+        return bytes;
+    }
+
+    // OR-pools each 2x2 block of the fine grid into one cell, a word at a time
+    private static MazeGrid halve(MazeGrid fine) {
+        final int height = (fine.getHeight() + 1) / 2, width = (fine.getWidth() + 1) / 2;
+        final int fineWords = fine.getWordsPerRow();
+        MazeGrid coarse = new MazeGrid(width, height);
+
+        for (int i = 0; i < height; i++) {
+            int top = 2 * i, bottom = Math.min(2 * i + 1, fine.getHeight() - 1);
+            for (int w = 0; w < coarse.getWordsPerRow(); w++) {
+                // Each coarse word covers two fine words
+                long low = fine.getWord(top, 2 * w) | fine.getWord(bottom, 2 * w);
+                long high = 2 * w + 1 < fineWords
+                        ? fine.getWord(top, 2 * w + 1) | fine.getWord(bottom, 2 * w + 1) : 0;
+                coarse.setWord(i, w, pairs(low) | pairs(high) << 32);
+            }
+        }
+        return coarse;
+    }
+
+    // ORs each pair of neighbouring bits together and packs the 32 results into the low half
+    private static long pairs(long bits) {
+        long x = (bits | bits >>> 1) & 0x5555555555555555L;
+        x = (x | x >>> 1) & 0x3333333333333333L;
+        x = (x | x >>> 2) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | x >>> 4) & 0x00FF00FF00FF00FFL;
+        x = (x | x >>> 8) & 0x0000FFFF0000FFFFL;
+        return (x | x >>> 16) & 0x00000000FFFFFFFFL;
+    }
+}
@@ -0,0 +1,45 @@
+package com.davidhaas.mazeways.pathfinding;
+
+/**
+ * Name: Heuristics
+ * Purpose: The step costs of the 8-connected grid and the distance estimates built from them.
+ */
+final class Heuristics {
+    static final int V_H_COST = 10;
+    static final int DIAGONAL_COST = 14;
+
+    private Heuristics() {
+    }
+
+    /**
+     * The octile distance: the cost of the cheapest mix of straight and diagonal steps between two
+     * cells when there are no walls. It never overestimates, and it is consistent, so A* never has
+     * to reopen a closed cell.
+     * @param di The absolute difference in rows
+     * @param dj The absolute difference in columns
+     * @return The distance in the same units as the step costs
+     */
+    static int octile(int di, int dj) {
+        int diagonal = Math.min(di, dj);
+        return diagonal * DIAGONAL_COST + (Math.max(di, dj) - diagonal) * V_H_COST;
+    }
+
+    /**
+     * Inflates a heuristic for weighted A*. Rounding down keeps the weighted estimate at most
+     * weight times the true estimate, which is what bounds the path to weight times optimal.
+     * @param h The admissible estimate
+     * @param weight The inflation factor, at least 1
+     * @return The inflated estimate
+     */
+    static int weighted(int h, double weight) {
+        return weight == 1 ? h : (int) (h * weight);
+    }
+
+    /**
+     * @throws IllegalArgumentException If the weight is below 1
+     */
+    static void checkWeight(double weight) {
+        if (!(weight >= 1))
+            throw new IllegalArgumentException("The heuristic weight must be at least 1: " + weight);
+    }
+}
@@ -0,0 +1,197 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Name: HierarchicalSolver
+ * Purpose: Solves a maze on its ClusterGraph (HPA*). The start and end are joined to the nodes of
+ * their own clusters by a search inside each cluster, A* then runs over the abstract graph, and
+ * only the clusters on the abstract path are searched again to turn its edges back into pixels.
+ * Since the graph is kept, a query with new endpoints costs two cluster searches, a search of the
+ * small graph and the refinement.
+ *
+ * The path only crosses between clusters at the transitions, so it can cost slightly more than
+ * the shortest path through the pixels.
+ */
+public class HierarchicalSolver implements PathSolver {
+    private final ClusterGraph graph;
+    private final ClusterGraph.LocalSearch local;
+    private final int width;
+    private final int start, end;
+    private final int endI, endJ;
+    private double weight = 1;
+    private SolveControl control = new SolveControl();
+    private final SolveStats stats = new SolveStats();
+    private int heapOperations;
+    private int[] pixelPath; // Every pixel from the start to the end, or null if there's no path
+
+    public HierarchicalSolver(ClusterGraph graph, int startI, int startJ, int endI, int endJ) {
+        this.graph = graph;
+        this.local = new ClusterGraph.LocalSearch(graph);
+        this.width = graph.getMaze().getWidth();
+        this.start = startI * width + startJ;
+        this.end = endI * width + endJ;
+        this.endI = endI;
+        this.endJ = endJ;
+    }
+
+    @Override
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    @Override
+    public void setWeight(double weight) {
+        Heuristics.checkWeight(weight);
+        this.weight = weight;
+    }
+
+    @Override
+    public void solve() {
+        pixelPath = null;
+        MazeGrid maze = graph.getMaze();
+        if (maze.isWall(endI, endJ) || maze.isWall(start / width, start % width))
+            return;
+
+        // The abstract graph plus S and T, the start and end, as the last two nodes
+        int nodes = graph.nodeCount(), s = nodes, t = nodes + 1;
+        int startCluster = graph.clusterOf(start), endCluster = graph.clusterOf(end);
+        IntList startNodes = graph.clusterNodes(startCluster);
+        IntList endNodes = graph.clusterNodes(endCluster);
+
+        // Costs from S to the nodes of its cluster, and to T if they share one
+        local.run(start, -1);
+        int[] startCost = new int[startNodes.size()];
+        for (int k = 0; k < startNodes.size(); k++)
+            startCost[k] = local.cost(graph.nodePixel(startNodes.get(k)));
+        int direct = startCluster == endCluster ? local.cost(end) : ClusterGraph.INFINITY;
+
+        // Costs from the nodes of T's cluster to T, which are the same as from T to them
+        local.run(end, -1);
+        int[] endCost = new int[endNodes.size()];
+        for (int k = 0; k < endNodes.size(); k++)
+            endCost[k] = local.cost(graph.nodePixel(endNodes.get(k)));
+
+        int[] gCost = new int[nodes + 2];
+        int[] parent = new int[nodes + 2];
+        boolean[] closed = new boolean[nodes + 2];
+        Arrays.fill(gCost, ClusterGraph.INFINITY);
+        IndexedHeap open = new IndexedHeap(nodes + 2);
+
+        gCost[s] = 0;
+        parent[s] = -1;
+        open.push(s, heuristic(start), 0);
+        stats.generated(open.size());
+        try {
+            while (!open.isEmpty()) {
+                int current = open.pop();
+                closed[current] = true;
+                stats.closed++;
+                stats.expanded++;
+                if (current == t)
+                    break;
+                int pixel = current == s ? start : graph.nodePixel(current);
+                if (control.checkpoint(stats.expanded, gCost[current] + heuristic(pixel)))
+                    return;
+
+                if (current == s) {
+                    for (int k = 0; k < startNodes.size(); k++)
+                        if (startCost[k] != ClusterGraph.INFINITY)
+                            relax(open, gCost, parent, closed, s, startNodes.get(k), startCost[k]);
+                    if (direct != ClusterGraph.INFINITY)
+                        relax(open, gCost, parent, closed, s, t, direct);
+                    continue;
+                }
+
+                for (int e = graph.edgeStart(current); e < graph.edgeEnd(current); e++)
+                    relax(open, gCost, parent, closed, current, graph.edgeTo(e), graph.edgeCost(e));
+                if (graph.clusterOf(pixel) == endCluster) {
+                    int k = indexOf(endNodes, current);
+                    if (endCost[k] != ClusterGraph.INFINITY)
+                        relax(open, gCost, parent, closed, current, t, endCost[k]);
+                }
+            }
+        } finally {
+            heapOperations += open.getOperations();
+        }
+        if (!closed[t])
+            return;
+
+        // Walks the abstract path back to S, then searches each cluster it passes through
+        IntList abstractPath = new IntList();
+        for (int node = t; node != -1; node = parent[node])
+            abstractPath.add(node);
+        IntList pixels = new IntList(abstractPath.size() * graph.getClusterSize());
+        pixels.add(start);
+        for (int k = abstractPath.size() - 2; k >= 0; k--) {
+            int node = abstractPath.get(k);
+            int from = pixels.get(pixels.size() - 1), to = node == t ? end : graph.nodePixel(node);
+            if (from == to)
+                continue;
+            if (graph.clusterOf(from) != graph.clusterOf(to)) {
+                pixels.add(to); // A transition, which is a single step
+            } else {
+                local.run(from, to);
+                local.appendPath(to, pixels);
+            }
+        }
+        pixelPath = pixels.toArray();
+    }
+
+    @Override
+    public PackedPath getPackedPath() {
+        return pixelPath == null ? null : new PackedPath(pixelPath, width);
+    }
+
+    @Override
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public int getExpandedCount() {
+        return stats.expanded;
+    }
+
+    @Override
+    public int getHeapOperations() {
+        return heapOperations;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return graph.getAllocatedBytes() + local.getAllocatedBytes();
+    }
+
+    private void relax(IndexedHeap open, int[] gCost, int[] parent, boolean[] closed, int from, int to, int cost) {
+        if (closed[to])
+            return;
+        int g = gCost[from] + cost;
+        if (g >= gCost[to])
+            return;
+
+        gCost[to] = g;
+        parent[to] = from;
+        int pixel = to == graph.nodeCount() + 1 ? end : graph.nodePixel(to);
+        if (open.contains(to)) {
+            open.decreaseKey(to, g + heuristic(pixel), g);
+            stats.decreaseKeys++;
+        } else {
+            open.push(to, g + heuristic(pixel), g);
+            stats.generated(open.size());
+        }
+    }
+
+    private int heuristic(int pixel) {
+        int i = pixel / width, j = pixel - i * width;
+        return Heuristics.weighted(Heuristics.octile(Math.abs(i - endI), Math.abs(j - endJ)), weight);
+    }
+
+    private static int indexOf(IntList list, int value) {
+        for (int k = 0; k < list.size(); k++) {
+            if (list.get(k) == value)
+                return k;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,189 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Name: IndexedHeap
+ * Purpose: A binary min-heap of cell indices keyed by int costs, with ties going to the larger
+ * tie-breaker. Each cell's slot in the heap is
+ * tracked so that membership tests are O(1) and decrease-key is a real O(log n) sift instead of
+ * a remove and re-add.
+ */
+class IndexedHeap implements OpenList {
+    private int[] nodes;   // The cell index stored in each heap slot
+    private int[] keys;    // The key of each heap slot, kept beside the node for locality
+    private int[] ties;    // The tie-breaker of each heap slot
+    private final int[] pos; // The heap slot of each cell, or -1 if it isn't in the heap
+    private int size;
+    private int operations;
+
+    /**
+     * Creates an empty heap.
+     * @param cellCount The number of distinct cell indices that can be stored
+     */
+    IndexedHeap(int cellCount) {
+        nodes = new int[64];
+        keys = new int[64];
+        ties = new int[64];
+        pos = new int[cellCount];
+        Arrays.fill(pos, -1);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(int node) {
+        return pos[node] >= 0;
+    }
+
+    @Override
+    public int getOperations() {
+        return operations;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return 4L * (pos.length + nodes.length + keys.length + ties.length);
+    }
+
+    @Override
+    public void push(int node, int key, int tie) {
+        operations++;
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+            ties = Arrays.copyOf(ties, size * 2);
+        }
+        nodes[size] = node;
+        keys[size] = key;
+        ties[size] = tie;
+        pos[node] = size;
+        siftUp(size++);
+    }
+
+    @Override
+    public int minKey() {
+        return keys[0];
+    }
+
+    @Override
+    public int pop() {
+        operations++;
+        int top = nodes[0];
+        pos[top] = -1;
+        if (--size > 0) {
+            nodes[0] = nodes[size];
+            keys[0] = keys[size];
+            ties[0] = ties[size];
+            pos[nodes[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    @Override
+    public void decreaseKey(int node, int key, int tie) {
+        operations++;
+        int slot = pos[node];
+        keys[slot] = key;
+        ties[slot] = tie;
+        siftUp(slot);
+    }
+
+    /**
+     * @return The tie-breaker of the entry pop would return.
+     */
+    int minTie() {
+        return ties[0];
+    }
+
+    /**
+     * Changes the key of a cell in the heap, up or down, for searches like D* Lite whose keys can
+     * grow.
+     */
+    void update(int node, int key, int tie) {
+        operations++;
+        int slot = pos[node];
+        keys[slot] = key;
+        ties[slot] = tie;
+        siftUp(slot);
+        siftDown(pos[node]);
+    }
+
+    /**
+     * Takes a cell out of the heap wherever it is.
+     */
+    void remove(int node) {
+        operations++;
+        int slot = pos[node];
+        pos[node] = -1;
+        if (slot == --size)
+            return;
+        int moved = nodes[size];
+        move(size, slot);
+        siftUp(slot);
+        siftDown(pos[moved]);
+    }
+
+    @Override
+    public void clear() {
+        for (int k = 0; k < size; k++)
+            pos[nodes[k]] = -1;
+        size = 0;
+        operations = 0;
+    }
+
+    private void siftUp(int slot) {
+        int node = nodes[slot], key = keys[slot], tie = ties[slot];
+        while (slot > 0) {
+            int up = (slot - 1) >>> 1;
+            if (!before(key, tie, keys[up], ties[up]))
+                break;
+            move(up, slot);
+            slot = up;
+        }
+        nodes[slot] = node;
+        keys[slot] = key;
+        ties[slot] = tie;
+        pos[node] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int node = nodes[slot], key = keys[slot], tie = ties[slot];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            if (child + 1 < size && before(keys[child + 1], ties[child + 1], keys[child], ties[child]))
+                child++;
+            if (!before(keys[child], ties[child], key, tie))
+                break;
+            move(child, slot);
+            slot = child;
+        }
+        nodes[slot] = node;
+        keys[slot] = key;
+        ties[slot] = tie;
+        pos[node] = slot;
+    }
+
+    // Whether an entry with key1 and tie1 has to come out before one with key2 and tie2
+    private static boolean before(int key1, int tie1, int key2, int tie2) {
+        return key1 < key2 || (key1 == key2 && tie1 > tie2);
+    }
+
+    // Moves the entry in slot "from" into slot "to"
+    private void move(int from, int to) {
+        nodes[to] = nodes[from];
+        keys[to] = keys[from];
+        ties[to] = ties[from];
+        pos[nodes[to]] = to;
+    }
+}
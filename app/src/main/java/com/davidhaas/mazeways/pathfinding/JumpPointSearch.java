@@ -0,0 +1,276 @@
+package com.davidhaas.mazeways.pathfinding;
+
+/**
+ * Name: JumpPointSearch
+ * Purpose: A* with jump point pruning for the 8-connected grid. Straight and diagonal runs are
+ * scanned without touching the open list, which only ever holds jump points.
+ *
+ * Like the other engines, a diagonal step only needs its target cell to be free, so the search
+ * may cut between two walls that touch at a corner. The forced neighbour rules below are the
+ * ones for that movement model.
+ */
+public class JumpPointSearch implements PathSolver {
+    private final MazeGrid maze;
+    private final int width, height;
+    private final SolverContext context;
+    private final int[] gCost;
+    private final int[] parent;
+    private final OpenList open;
+    private final int start, end;
+    private final int endI, endJ;
+    private double weight = 1;
+    private SolveControl control = new SolveControl();
+    private final SolveStats stats = new SolveStats();
+
+    // Directions to search from the current cell, refilled for every expansion
+    private final int[] dirI = new int[8], dirJ = new int[8];
+
+    public JumpPointSearch(MazeGrid maze, int startI, int startJ, int endI, int endJ) {
+        this(maze, new IndexedHeap(maze.getWidth() * maze.getHeight()), startI, startJ, endI, endJ);
+    }
+
+    /**
+     * @param open The empty open list to search with, sized for every cell of the maze
+     */
+    JumpPointSearch(MazeGrid maze, OpenList open, int startI, int startJ, int endI, int endJ) {
+        this(maze, new SolverContext(maze.getWidth() * maze.getHeight()), open, startI, startJ, endI, endJ);
+    }
+
+    /**
+     * @param context The state to search with, which is reset when the search starts and holds
+     *                the path until the next reset
+     * @param open The empty open list to search with, usually one of the context's
+     */
+    JumpPointSearch(MazeGrid maze, SolverContext context, OpenList open,
+                    int startI, int startJ, int endI, int endJ) {
+        this.maze = maze;
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.context = context;
+        this.gCost = context.gCost;
+        this.parent = context.parent;
+        this.open = open;
+        this.start = startI * width + startJ;
+        this.end = endI * width + endJ;
+        this.endI = endI;
+        this.endJ = endJ;
+    }
+
+    @Override
+    public void solve() {
+        context.reset();
+        if (!walkable(start / width, start % width))
+            return;
+
+        gCost[start] = 0;
+        parent[start] = -1;
+        context.open(start);
+        open.push(start, heuristic(start), 0);
+        stats.generated(open.size());
+
+        while (!open.isEmpty()) {
+            int current = open.pop();
+            context.close(current);
+            stats.closed++;
+            stats.expanded++;
+
+            if (current == end || control.checkpoint(stats.expanded, gCost[current] + heuristic(current)))
+                return;
+
+            int ci = current / width, cj = current - ci * width;
+            int dirs = prunedDirections(current, ci, cj);
+            for (int d = 0; d < dirs; d++) {
+                int jumpPoint = jump(ci, cj, dirI[d], dirJ[d]);
+                if (jumpPoint != -1)
+                    relax(current, ci, cj, jumpPoint);
+            }
+        }
+    }
+
+    @Override
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    @Override
+    public void setWeight(double weight) {
+        Heuristics.checkWeight(weight);
+        this.weight = weight;
+    }
+
+    /**
+     * Returns every cell of the path, not only the jump points.
+     * @return The path, or null if the end wasn't reached
+     */
+    @Override
+    public PackedPath getPackedPath() {
+        if (!context.isClosed(end))
+            return null;
+
+        // Each jump is a straight or diagonal run, so its length is the larger of its two sides
+        int length = 1;
+        for (int c = end; parent[c] != -1; c = parent[c]) {
+            int p = parent[c];
+            length += Math.max(Math.abs(p / width - c / width), Math.abs(p % width - c % width));
+        }
+
+        int[] cells = new int[length];
+        int k = length - 1;
+        cells[k] = end;
+        for (int c = end; parent[c] != -1; c = parent[c]) {
+            int i = c / width, j = c % width;
+            int p = parent[c], pi = p / width, pj = p % width;
+            int di = Integer.signum(pi - i), dj = Integer.signum(pj - j);
+
+            // Fills in the run between the two jump points, back towards the start
+            do {
+                i += di;
+                j += dj;
+                cells[--k] = i * width + j;
+            } while (i != pi || j != pj);
+        }
+        return new PackedPath(cells, width);
+    }
+
+    @Override
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public int getExpandedCount() {
+        return stats.expanded;
+    }
+
+    @Override
+    public int getHeapOperations() {
+        return open.getOperations();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return context.getAllocatedBytes() + open.getAllocatedBytes();
+    }
+
+    // Fills dirI and dirJ with the directions that can't be reached more cheaply through the parent
+    private int prunedDirections(int current, int i, int j) {
+        int n = 0;
+        if (parent[current] == -1) {
+            for (int di = -1; di <= 1; di++) {
+                for (int dj = -1; dj <= 1; dj++) {
+                    if (di != 0 || dj != 0) {
+                        dirI[n] = di;
+                        dirJ[n++] = dj;
+                    }
+                }
+            }
+            return n;
+        }
+
+        int p = parent[current];
+        int di = Integer.signum(i - p / width), dj = Integer.signum(j - p % width);
+        if (di != 0 && dj != 0) {
+            dirI[n] = di;  dirJ[n++] = 0;
+            dirI[n] = 0;   dirJ[n++] = dj;
+            dirI[n] = di;  dirJ[n++] = dj;
+            if (!walkable(i, j - dj)) {
+                dirI[n] = di;  dirJ[n++] = -dj;
+            }
+            if (!walkable(i - di, j)) {
+                dirI[n] = -di; dirJ[n++] = dj;
+            }
+        } else if (di != 0) {
+            dirI[n] = di;  dirJ[n++] = 0;
+            if (!walkable(i, j + 1)) {
+                dirI[n] = di;  dirJ[n++] = 1;
+            }
+            if (!walkable(i, j - 1)) {
+                dirI[n] = di;  dirJ[n++] = -1;
+            }
+        } else {
+            dirI[n] = 0;   dirJ[n++] = dj;
+            if (!walkable(i + 1, j)) {
+                dirI[n] = 1;   dirJ[n++] = dj;
+            }
+            if (!walkable(i - 1, j)) {
+                dirI[n] = -1;  dirJ[n++] = dj;
+            }
+        }
+        return n;
+    }
+
+    // Moves from (i, j) in a direction until it finds a jump point, returning -1 if it hits a wall
+    private int jump(int i, int j, int di, int dj) {
+        while (true) {
+            i += di;
+            j += dj;
+            if (!walkable(i, j))
+                return -1;
+
+            int cell = i * width + j;
+            if (cell == end)
+                return cell;
+
+            if (di != 0 && dj != 0) {
+                if ((walkable(i + di, j - dj) && !walkable(i, j - dj))
+                        || (walkable(i - di, j + dj) && !walkable(i - di, j)))
+                    return cell;
+                // A diagonal cell is a jump point if a straight run from it finds one
+                if (jumpsStraight(i, j, di, 0) || jumpsStraight(i, j, 0, dj))
+                    return cell;
+            } else if (hasForcedNeighbour(i, j, di, dj)) {
+                return cell;
+            }
+        }
+    }
+
+    // Whether a straight run from (i, j) reaches the end or a cell with a forced neighbour
+    private boolean jumpsStraight(int i, int j, int di, int dj) {
+        while (true) {
+            i += di;
+            j += dj;
+            if (!walkable(i, j))
+                return false;
+            if (i * width + j == end || hasForcedNeighbour(i, j, di, dj))
+                return true;
+        }
+    }
+
+    private boolean hasForcedNeighbour(int i, int j, int di, int dj) {
+        if (di != 0)
+            return (walkable(i + di, j + 1) && !walkable(i, j + 1))
+                    || (walkable(i + di, j - 1) && !walkable(i, j - 1));
+        return (walkable(i + 1, j + dj) && !walkable(i + 1, j))
+                || (walkable(i - 1, j + dj) && !walkable(i - 1, j));
+    }
+
+    private void relax(int current, int ci, int cj, int next) {
+        if (context.isClosed(next))
+            return;
+
+        int ni = next / width, nj = next - ni * width;
+        int cost = gCost[current] + Heuristics.octile(Math.abs(ni - ci), Math.abs(nj - cj));
+
+        if (!context.isOpen(next)) {
+            gCost[next] = cost;
+            parent[next] = current;
+            context.open(next);
+            open.push(next, cost + heuristic(next), cost);
+            stats.generated(open.size());
+        } else if (cost < gCost[next]) {
+            gCost[next] = cost;
+            parent[next] = current;
+            open.decreaseKey(next, cost + heuristic(next), cost);
+            stats.decreaseKeys++;
+        }
+    }
+
+    private boolean walkable(int i, int j) {
+        return i >= 0 && i < height && j >= 0 && j < width && !maze.isWall(i, j);
+    }
+
+    private int heuristic(int cell) {
+        int i = cell / width, j = cell - i * width;
+        return Heuristics.weighted(Heuristics.octile(Math.abs(i - endI), Math.abs(j - endJ)), weight);
+    }
+}
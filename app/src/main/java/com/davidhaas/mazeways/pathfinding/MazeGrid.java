@@ -0,0 +1,171 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.io.Serializable;
+
+/**
+ * Name: MazeGrid
+ * Purpose: A binary maze stored as one bit per pixel, where a set bit is a wall. Each row starts
+ * on a fresh long so rows can be scanned a word at a time.
+ */
+public class MazeGrid implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int width, height;
+    private final int stride; // The number of longs per row
+    private final long[] bits;
+
+    /**
+     * Creates a grid with no walls.
+     * @param width The number of columns
+     * @param height The number of rows
+     */
+    public MazeGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.stride = (width + 63) >>> 6;
+        this.bits = new long[stride * height];
+    }
+
+    /**
+     * Copies another grid, so the copy can be edited without changing the original.
+     */
+    public MazeGrid(MazeGrid other) {
+        this.width = other.width;
+        this.height = other.height;
+        this.stride = other.stride;
+        this.bits = other.bits.clone();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The number of bytes used by the bit array.
+     */
+    public long getByteSize() {
+        return (long) bits.length * 8;
+    }
+
+    public boolean isWall(int i, int j) {
+        return (bits[i * stride + (j >>> 6)] & (1L << j)) != 0;
+    }
+
+    public void setWall(int i, int j, boolean wall) {
+        if (wall)
+            bits[i * stride + (j >>> 6)] |= 1L << j;
+        else
+            bits[i * stride + (j >>> 6)] &= ~(1L << j);
+    }
+
+    /**
+     * @return The number of 64 bit words in each row.
+     */
+    public int getWordsPerRow() {
+        return stride;
+    }
+
+    /**
+     * @param i The row
+     * @param word The index of the word in the row, covering columns word * 64 to word * 64 + 63
+     * @return The 64 wall bits, lowest column in the lowest bit. Bits past the end of the row are 0.
+     */
+    public long getWord(int i, int word) {
+        return bits[i * stride + word];
+    }
+
+    /**
+     * Sets a whole word of a row at once. Bits past the end of the row are ignored.
+     * @param i The row
+     * @param word The index of the word in the row, covering columns word * 64 to word * 64 + 63
+     * @param value The 64 wall bits, lowest column in the lowest bit
+     */
+    public void setWord(int i, int word, long value) {
+        if (word == stride - 1 && (width & 63) != 0)
+            value &= -1L >>> (64 - (width & 63));
+        bits[i * stride + word] = value;
+    }
+
+    /**
+     * @param i The row
+     * @return Whether the row contains no walls.
+     */
+    public boolean isRowEmpty(int i) {
+        for (int w = i * stride, end = w + stride; w < end; w++) {
+            if (bits[w] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the first wall in a row at or to the right of a column.
+     * @param i The row
+     * @param fromJ The column to start from
+     * @return The column of the wall, or -1 if there isn't one
+     */
+    public int nextWall(int i, int fromJ) {
+        if (fromJ >= width)
+            return -1;
+        int base = i * stride;
+        int w = fromJ >>> 6;
+        long word = bits[base + w] & (-1L << fromJ);
+        while (true) {
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == stride)
+                return -1;
+            word = bits[base + w];
+        }
+    }
+
+    /**
+     * Finds the first wall in a row at or to the left of a column.
+     * @param i The row
+     * @param fromJ The column to start from
+     * @return The column of the wall, or -1 if there isn't one
+     */
+    public int prevWall(int i, int fromJ) {
+        if (fromJ < 0)
+            return -1;
+        int base = i * stride;
+        int w = fromJ >>> 6;
+        long word = bits[base + w] & (-1L >>> (63 - (fromJ & 63)));
+        while (true) {
+            if (word != 0)
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+            if (--w < 0)
+                return -1;
+            word = bits[base + w];
+        }
+    }
+
+    /**
+     * Turns a range of a row into walls.
+     * @param i The row
+     * @param fromJ The first column, inclusive
+     * @param toJ The last column, exclusive
+     */
+    public void fillRow(int i, int fromJ, int toJ) {
+        fromJ = Math.max(fromJ, 0);
+        toJ = Math.min(toJ, width);
+        if (fromJ >= toJ)
+            return;
+
+        int base = i * stride;
+        int first = fromJ >>> 6, last = (toJ - 1) >>> 6;
+        long firstMask = -1L << fromJ, lastMask = -1L >>> (63 - ((toJ - 1) & 63));
+        if (first == last) {
+            bits[base + first] |= firstMask & lastMask;
+            return;
+        }
+        bits[base + first] |= firstMask;
+        for (int w = first + 1; w < last; w++)
+            bits[base + w] = -1L;
+        bits[base + last] |= lastMask;
+    }
+}
@@ -0,0 +1,177 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Name: MultiGoalAStar
+ * Purpose: An A* engine that searches from several starts to several goals at once, for when the
+ * entrances are a set of candidates rather than one pair. Every start goes on the open list at a
+ * cost of 0 and the heuristic is the distance to the nearest goal, which still never overestimates,
+ * so the first goal taken off the open list ends the shortest path between any start and any goal.
+ * That costs about the same as one search between the closest pair, instead of one per pair.
+ */
+public class MultiGoalAStar implements PathSolver {
+    // Row and column offsets of the 8 neighbours of a cell
+    private static final int[] DI = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DJ = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    private final MazeGrid maze;
+    private final int width, height;
+    private final SolverContext context;
+    private final int[] gCost;
+    private final int[] parent;
+    private final OpenList open;
+    private final int[] starts;
+    private final int[] goals;            // Sorted, to look cells up in
+    private final int[] goalI, goalJ;
+    private double weight = 1;
+    private int reached = -1;             // The goal the path ends at
+    private SolveControl control = new SolveControl();
+    private final SolveStats stats = new SolveStats();
+
+    public MultiGoalAStar(MazeGrid maze, int[] starts, int[] goals) {
+        this(maze, new SolverContext(maze.getWidth() * maze.getHeight()),
+                new IndexedHeap(maze.getWidth() * maze.getHeight()), starts, goals);
+    }
+
+    /**
+     * @param context The state to search with, which is reset when the search starts and holds
+     *                the path until the next reset
+     * @param open The empty open list to search with, usually one of the context's
+     * @param starts The start pixels, as i * width + j
+     * @param goals The goal pixels, as i * width + j
+     */
+    MultiGoalAStar(MazeGrid maze, SolverContext context, OpenList open, int[] starts, int[] goals) {
+        this.maze = maze;
+        this.width = maze.getWidth();
+        this.height = maze.getHeight();
+        this.context = context;
+        this.gCost = context.gCost;
+        this.parent = context.parent;
+        this.open = open;
+        this.starts = starts.clone();
+        this.goals = goals.clone();
+        Arrays.sort(this.goals);
+        this.goalI = new int[goals.length];
+        this.goalJ = new int[goals.length];
+        for (int g = 0; g < goals.length; g++) {
+            goalI[g] = this.goals[g] / width;
+            goalJ[g] = this.goals[g] % width;
+        }
+    }
+
+    @Override
+    public void solve() {
+        context.reset();
+        reached = -1;
+        for (int start : starts) {
+            if (maze.isWall(start / width, start % width) || context.isOpen(start))
+                continue;
+            gCost[start] = 0;
+            parent[start] = -1;
+            context.open(start);
+            open.push(start, heuristic(start), 0);
+            stats.generated(open.size());
+        }
+
+        while (!open.isEmpty()) {
+            int current = open.pop();
+            context.close(current);
+            stats.closed++;
+            stats.expanded++;
+
+            if (Arrays.binarySearch(goals, current) >= 0) {
+                reached = current;
+                return;
+            }
+            if (control.checkpoint(stats.expanded, gCost[current] + heuristic(current)))
+                return;
+
+            int ci = current / width, cj = current - ci * width;
+            for (int k = 0; k < 8; k++) {
+                int ni = ci + DI[k], nj = cj + DJ[k];
+                if (ni < 0 || ni >= height || nj < 0 || nj >= width || maze.isWall(ni, nj))
+                    continue;
+                int cost = (DI[k] != 0 && DJ[k] != 0) ? Heuristics.DIAGONAL_COST : Heuristics.V_H_COST;
+                relax(current, ni * width + nj, gCost[current] + cost);
+            }
+        }
+    }
+
+    @Override
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    @Override
+    public void setWeight(double weight) {
+        Heuristics.checkWeight(weight);
+        this.weight = weight;
+    }
+
+    /**
+     * @return The path from whichever start is nearest a goal to that goal, or null if no goal
+     * was reached.
+     */
+    @Override
+    public PackedPath getPackedPath() {
+        if (reached == -1)
+            return null;
+        return PackedPath.fromParents(parent, reached, width);
+    }
+
+    /**
+     * @return The goal the path ends at, as i * width + j, or -1 if none was reached.
+     */
+    public int getReachedGoal() {
+        return reached;
+    }
+
+    @Override
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public int getExpandedCount() {
+        return stats.expanded;
+    }
+
+    @Override
+    public int getHeapOperations() {
+        return open.getOperations();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return context.getAllocatedBytes() + open.getAllocatedBytes();
+    }
+
+    // Updates a neighbour's cost if the path through current is cheaper than its best so far
+    private void relax(int current, int next, int cost) {
+        if (context.isClosed(next))
+            return;
+
+        if (!context.isOpen(next)) {
+            gCost[next] = cost;
+            parent[next] = current;
+            context.open(next);
+            open.push(next, cost + heuristic(next), cost);
+            stats.generated(open.size());
+        } else if (cost < gCost[next]) {
+            gCost[next] = cost;
+            parent[next] = current;
+            open.decreaseKey(next, cost + heuristic(next), cost);
+            stats.decreaseKeys++;
+        }
+    }
+
+    // The distance to the nearest goal. The least of several consistent heuristics is consistent.
+    private int heuristic(int cell) {
+        int i = cell / width, j = cell - i * width;
+        int nearest = Integer.MAX_VALUE;
+        for (int g = 0; g < goals.length; g++)
+            nearest = Math.min(nearest, Heuristics.octile(Math.abs(i - goalI[g]), Math.abs(j - goalJ[g])));
+        return nearest == Integer.MAX_VALUE ? 0 : Heuristics.weighted(nearest, weight);
+    }
+}
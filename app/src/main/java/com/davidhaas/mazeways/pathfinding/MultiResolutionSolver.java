@@ -0,0 +1,218 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import android.util.Log;
+
+/**
+ * Name: MultiResolutionSolver
+ * Purpose: Solves a maze coarse to fine over a GridPyramid. The path is first found on the
+ * smallest level that still connects the entrances, which is quick because that level has few
+ * cells. Each finer level is then searched only inside a band around the path from the level
+ * above, with every cell outside the band treated as a wall. If the band is too narrow to hold a
+ * path it is widened, and as a last resort the whole level is searched.
+ *
+ * Pooling can close narrow corridors at the coarse levels, so the coarse path may take a longer
+ * route than the full resolution maze allows and the final path isn't always the shortest.
+ */
+public class MultiResolutionSolver implements PathSolver {
+    private static final String TAG = "MultiResolutionSolver";
+    private static final int MIN_BAND = 4;     // Cells of slack on each side of the coarse path
+    private static final int MAX_BAND = 64;
+    private static final int SNAP_RADIUS = 2;  // How far an entrance may move to a free coarse cell
+
+    /**
+     * Receives the path found on the coarsest level, so it can be shown while the finer levels
+     * are refined.
+     */
+    public interface CoarsePathListener {
+        /**
+         * @param path The coarse path, in coarse cells
+         * @param scale The number of full resolution pixels along each side of a coarse cell
+         */
+        void onCoarsePath(PackedPath path, int scale);
+    }
+
+    private final GridPyramid pyramid;
+    private final SolverContext context;
+    private final int startI, startJ, endI, endJ;
+    private double weight = 1;
+    private CoarsePathListener listener;
+    private SolveControl control = new SolveControl();
+    private PackedPath path;
+    private final SolveStats stats = new SolveStats();
+    private int heapOperations;
+    private long searchBytes;
+
+    public MultiResolutionSolver(GridPyramid pyramid, int startI, int startJ, int endI, int endJ) {
+        this(pyramid, new SolverContext(pyramid.getLevel(0).getWidth() * pyramid.getLevel(0).getHeight()),
+                startI, startJ, endI, endJ);
+    }
+
+    /**
+     * @param context The state to search every level with, sized for the full resolution maze
+     */
+    MultiResolutionSolver(GridPyramid pyramid, SolverContext context, int startI, int startJ, int endI, int endJ) {
+        this.pyramid = pyramid;
+        this.context = context;
+        this.startI = startI;
+        this.startJ = startJ;
+        this.endI = endI;
+        this.endJ = endJ;
+    }
+
+    public void setCoarsePathListener(CoarsePathListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setSolveControl(SolveControl control) {
+        this.control = control;
+    }
+
+    @Override
+    public void setWeight(double weight) {
+        Heuristics.checkWeight(weight);
+        this.weight = weight;
+    }
+
+    @Override
+    public void solve() {
+        // Finds the coarsest level with a path between the entrances
+        int level = pyramid.getLevelCount() - 1;
+        PackedPath cells = null;
+        for (; level >= 0; level--) {
+            cells = search(level, null);
+            if (cells != null)
+                break;
+        }
+        if (cells == null)
+            return;
+
+        Log.i(TAG, "solve: Coarse path of " + cells.length() + " cells on level " + level);
+        if (level > 0 && listener != null)
+            listener.onCoarsePath(cells, 1 << level);
+
+        while (level > 0 && cells != null) {
+            level--;
+            cells = refine(level, cells);
+        }
+        path = cells;
+    }
+
+    @Override
+    public PackedPath getPackedPath() {
+        return path;
+    }
+
+    @Override
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public int getExpandedCount() {
+        return stats.expanded;
+    }
+
+    @Override
+    public int getHeapOperations() {
+        return heapOperations;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return pyramid.getAllocatedBytes() + searchBytes;
+    }
+
+    // Searches a level inside bands of growing width around the path from the level above
+    private PackedPath refine(int level, PackedPath coarsePath) {
+        MazeGrid maze = pyramid.getLevel(level);
+
+        for (int band = MIN_BAND; band <= MAX_BAND; band *= 2) {
+            PackedPath cells = search(level, restrictToBand(maze, coarsePath, level, band));
+            if (cells != null)
+                return cells;
+            Log.i(TAG, "refine: No path within " + band + " cells on level " + level);
+        }
+        return search(level, null);
+    }
+
+    // A copy of the level with every cell outside the band around the coarse path made a wall
+    private MazeGrid restrictToBand(MazeGrid maze, PackedPath coarsePath, int level, int band) {
+        final int width = maze.getWidth(), height = maze.getHeight();
+        MazeGrid inBand = new MazeGrid(width, height);
+        for (int k = 0; k < coarsePath.length(); k++)
+            markSquare(inBand, 2 * coarsePath.getI(k), 2 * coarsePath.getJ(k), 2, band);
+        markSquare(inBand, startI >> level, startJ >> level, 1, band);
+        markSquare(inBand, endI >> level, endJ >> level, 1, band);
+
+        MazeGrid restricted = new MazeGrid(width, height);
+        for (int i = 0; i < height; i++) {
+            for (int w = 0; w < maze.getWordsPerRow(); w++)
+                restricted.setWord(i, w, maze.getWord(i, w) | ~inBand.getWord(i, w));
+        }
+        searchBytes = Math.max(searchBytes, 2 * maze.getByteSize());
+        return restricted;
+    }
+
+    // Marks a size x size block with its top left at (i, j), grown by band cells on every side
+    private static void markSquare(MazeGrid grid, int i, int j, int size, int band) {
+        int fromI = Math.max(i - band, 0), toI = Math.min(i + size + band, grid.getHeight());
+        for (int r = fromI; r < toI; r++)
+            grid.fillRow(r, j - band, j + size + band);
+    }
+
+    /**
+     * Runs A* on one level between the entrances, moved to that level's scale.
+     * @param restricted The level with walls outside a band, or null to search the whole level
+     * @return The cells from the start to the end, or null if there's no path
+     */
+    private PackedPath search(int level, MazeGrid restricted) {
+        if (control.getStopReason() != null)
+            return null;
+        MazeGrid maze = pyramid.getLevel(level);
+        int width = maze.getWidth();
+        int start = snap(maze, level, startI, startJ), end = snap(maze, level, endI, endJ);
+        if (start == -1 || end == -1)
+            return null;
+
+        MazeGrid grid = restricted != null ? restricted : maze;
+        GridAStar aStar = new GridAStar(grid, context, context.bucketQueue(),
+                start / width, start % width, end / width, end % width);
+        aStar.setWeight(weight);
+        aStar.setSolveControl(control);
+        aStar.solve();
+        stats.add(aStar.getStats());
+        heapOperations += aStar.getHeapOperations();
+        searchBytes = Math.max(searchBytes, aStar.getAllocatedBytes());
+
+        return aStar.getPackedPath();
+    }
+
+    /**
+     * Moves an entrance to a level's scale. The entrance sits in a gap in the outer wall, which
+     * pooling often closes, so on the coarse levels it may move to a nearby free cell.
+     * @return The cell, or -1 if there's no free cell close enough
+     */
+    private static int snap(MazeGrid maze, int level, int i, int j) {
+        final int width = maze.getWidth(), height = maze.getHeight();
+        i >>= level;
+        j >>= level;
+        if (!maze.isWall(i, j))
+            return i * width + j;
+        if (level == 0)
+            return -1;
+
+        for (int r = 1; r <= SNAP_RADIUS; r++) {
+            for (int di = -r; di <= r; di++) {
+                for (int dj = -r; dj <= r; dj++) {
+                    if (Math.max(Math.abs(di), Math.abs(dj)) != r)
+                        continue;
+                    int ni = i + di, nj = j + dj;
+                    if (ni >= 0 && ni < height && nj >= 0 && nj < width && !maze.isWall(ni, nj))
+                        return ni * width + nj;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,59 @@
+package com.davidhaas.mazeways.pathfinding;
+
+/**
+ * Name: OpenList
+ * Purpose: The priority queue of cell indices that the grid engines keep their frontier in. Cells
+ * come out in order of lowest key, and among equal keys in order of highest tie, so that the
+ * engines can break f-cost ties in favour of the larger g-cost.
+ */
+interface OpenList {
+
+    boolean isEmpty();
+
+    int size();
+
+    boolean contains(int node);
+
+    /**
+     * @return The number of push, pop and decrease-key operations performed so far.
+     */
+    int getOperations();
+
+    /**
+     * @return The approximate number of bytes held by the list.
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Adds a cell that isn't already in the list.
+     * @param node The cell index
+     * @param key The cell's key
+     * @param tie The cell's tie-breaker
+     */
+    void push(int node, int key, int tie);
+
+    /**
+     * @return The lowest key in the list, which must not be empty.
+     */
+    int minKey();
+
+    /**
+     * Removes the cell with the lowest key, breaking ties on the highest tie-breaker.
+     * @return The removed cell index
+     */
+    int pop();
+
+    /**
+     * Lowers the key of a cell already in the list.
+     * @param node The cell index
+     * @param key The new key, which must not be larger than the current one
+     * @param tie The cell's new tie-breaker
+     */
+    void decreaseKey(int node, int key, int tie);
+
+    /**
+     * Removes every cell and zeroes the operation count, in time proportional to the number of
+     * cells in the list rather than the size of the maze.
+     */
+    void clear();
+}
@@ -0,0 +1,82 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.io.Serializable;
+
+/**
+ * Name: PackedPath
+ * Purpose: A solution path stored as one int per step, the index i * width + j of each cell in
+ * order from the start to the end, both included. A path of ten thousand steps is 40 KB in one
+ * array rather than ten thousand int[] objects in a Stack.
+ */
+public final class PackedPath implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int[] cells;
+    private final int width;
+
+    /**
+     * @param cells The cell indices from the start to the end. The array is kept, not copied.
+     * @param width The width of the maze the indices refer to
+     */
+    PackedPath(int[] cells, int width) {
+        this.cells = cells;
+        this.width = width;
+    }
+
+    /**
+     * Follows a parent array back from the end and writes the cells in from the back of the
+     * array, so the path comes out in order without being reversed.
+     * @param parent The parent of every reached cell, -1 at the start
+     * @param end The last cell of the path
+     * @param width The width of the maze
+     */
+    static PackedPath fromParents(int[] parent, int end, int width) {
+        int length = 1;
+        for (int c = end; parent[c] != -1; c = parent[c])
+            length++;
+
+        int[] cells = new int[length];
+        for (int c = end, k = length - 1; k >= 0; c = parent[c])
+            cells[k--] = c;
+        return new PackedPath(cells, width);
+    }
+
+    /**
+     * @return The number of cells on the path, including the start and the end.
+     */
+    public int length() {
+        return cells.length;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @param k The step, where 0 is the start
+     * @return The cell index i * width + j of the step.
+     */
+    public int getCell(int k) {
+        return cells[k];
+    }
+
+    public int getI(int k) {
+        return cells[k] / width;
+    }
+
+    public int getJ(int k) {
+        return cells[k] % width;
+    }
+
+    /**
+     * @return The total cost of the steps, in the units of the step costs.
+     */
+    public int getCost() {
+        int cost = 0;
+        for (int k = 1; k < cells.length; k++) {
+            boolean diagonal = getI(k) != getI(k - 1) && getJ(k) != getJ(k - 1);
+            cost += diagonal ? Heuristics.DIAGONAL_COST : Heuristics.V_H_COST;
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,50 @@
+package com.davidhaas.mazeways.pathfinding;
+
+/**
+ * Name: PathSolver
+ * Purpose: The common entry point of the search engines that Asolution can run.
+ */
+public interface PathSolver {
+
+    /**
+     * Turns the search into weighted A*, which inflates the heuristic so that fewer cells are
+     * expanded. The path found costs at most weight times the optimal cost.
+     * @param weight The inflation factor, at least 1. The default of 1 gives an optimal path.
+     */
+    void setWeight(double weight);
+
+    /**
+     * @param control Lets the search be cancelled, limited in time and watched while it runs
+     */
+    void setSolveControl(SolveControl control);
+
+    /**
+     * Searches from the start to the end, or until the SolveControl stops it.
+     */
+    void solve();
+
+    /**
+     * @return The path from the start to the end, or null if the end wasn't reached.
+     */
+    PackedPath getPackedPath();
+
+    /**
+     * @return The search counts of the last solve. Asolution adds the path and the timings.
+     */
+    SolveStats getStats();
+
+    /**
+     * @return The number of cells taken off the open list.
+     */
+    int getExpandedCount();
+
+    /**
+     * @return The number of operations performed on the open list.
+     */
+    int getHeapOperations();
+
+    /**
+     * @return The approximate number of bytes held by the per-cell search state.
+     */
+    long getAllocatedBytes();
+}
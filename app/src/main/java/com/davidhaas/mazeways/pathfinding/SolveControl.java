@@ -0,0 +1,104 @@
+package com.davidhaas.mazeways.pathfinding;
+
+/**
+ * Name: SolveControl
+ * Purpose: Lets another thread stop a solve, caps how long a solve may run, and reports progress
+ * while it runs. The engines call checkpoint once per expanded cell. Cancelling is checked every
+ * time, while the clock and the progress listener are only looked at every CHECK_INTERVAL calls so
+ * that they cost nothing next to the search itself.
+ */
+public class SolveControl {
+    private static final int CHECK_INTERVAL = 4096;
+
+    /**
+     * Receives the progress of a running solve, on the solving thread.
+     */
+    public interface ProgressListener {
+        /**
+         * @param expanded The number of cells the engine has expanded so far
+         * @param fCost The f-cost of the latest expanded cell, which is a lower bound on the cost
+         *              of the path when the weight is 1
+         */
+        void onProgress(int expanded, int fCost);
+    }
+
+    private volatile boolean cancelled;
+    private volatile SolveResult.Status stopReason;
+    private long deadline; // In System.nanoTime units, or 0 for no limit
+    private ProgressListener listener;
+    private int sinceCheck;
+
+    /**
+     * Asks the solve to stop as soon as it next checks. Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @param millis How long from now the solve may run before it gives up
+     */
+    public void setTimeLimit(long millis) {
+        deadline = System.nanoTime() + millis * 1000000;
+        if (deadline == 0)
+            deadline = 1;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return Whether the time limit, if there is one, has passed.
+     */
+    boolean isPastDeadline() {
+        return deadline != 0 && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * @return A control for one of several solves running at once under this one, with the same
+     * time limit and progress listener. Cancelling this one doesn't reach it by itself.
+     */
+    SolveControl share() {
+        SolveControl shared = new SolveControl();
+        shared.deadline = deadline;
+        shared.listener = listener;
+        return shared;
+    }
+
+    /**
+     * @return CANCELLED or TIMED_OUT if a checkpoint stopped the solve, otherwise null.
+     */
+    public SolveResult.Status getStopReason() {
+        return stopReason;
+    }
+
+    /**
+     * Called by the engines for every expanded cell. The two threads of the bidirectional engine
+     * both call it, which can only make the progress reports a little irregular.
+     * @param expanded The number of cells expanded so far
+     * @param fCost The f-cost of the cell being expanded
+     * @return Whether the engine has to stop
+     */
+    boolean checkpoint(int expanded, int fCost) {
+        if (cancelled) {
+            stopReason = SolveResult.Status.CANCELLED;
+            return true;
+        }
+        if (++sinceCheck < CHECK_INTERVAL)
+            return false;
+        sinceCheck = 0;
+
+        if (isPastDeadline()) {
+            stopReason = SolveResult.Status.TIMED_OUT;
+            return true;
+        }
+        if (listener != null)
+            listener.onProgress(expanded, fCost);
+        return false;
+    }
+}
@@ -0,0 +1,60 @@
+package com.davidhaas.mazeways.pathfinding;
+
+/**
+ * Name: SolveResult
+ * Purpose: How a solve ended and the path it found.
+ */
+public class SolveResult {
+
+    /**
+     * SOLVED: the search reached the end.
+     * NO_PATH: the search ran out of cells, or the entrances aren't connected.
+     * CANCELLED: SolveControl.cancel stopped the search.
+     * TIMED_OUT: the search ran past its time limit.
+     */
+    public enum Status {SOLVED, NO_PATH, CANCELLED, TIMED_OUT}
+
+    private final Status status;
+    private final PackedPath path;
+    private final SolveStats stats;
+    private final Asolution.Engine engine;
+
+    SolveResult(Status status, PackedPath path, SolveStats stats) {
+        this(status, path, stats, null);
+    }
+
+    SolveResult(Status status, PackedPath path, SolveStats stats, Asolution.Engine engine) {
+        this.status = status;
+        this.path = path;
+        this.stats = stats;
+        this.engine = engine;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The path, or null if none was found. A search that was stopped early can still have
+     * found a path, such as the bidirectional engine once its two sides have met, but it may not
+     * be the shortest one.
+     */
+    public PackedPath getPath() {
+        return path;
+    }
+
+    /**
+     * @return What the search did and how long it took, with zero counts if it never ran.
+     */
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return The engine that ran, which after a portfolio solve is the one that won, or null if
+     * none did.
+     */
+    public Asolution.Engine getEngine() {
+        return engine;
+    }
+}
@@ -0,0 +1,103 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.io.Serializable;
+
+/**
+ * Name: SolveStats
+ * Purpose: What one solve did and how long each part of it took. The engines count the search
+ * work as they go and Asolution adds the path and the timings, so that scale factors and
+ * thresholds can be tuned on numbers instead of on the total solve time alone.
+ */
+public class SolveStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Counted by the engines
+    int expanded;       // Cells taken off the open list
+    int generated;      // Cells put on the open list for the first time
+    int decreaseKeys;   // Cells whose key went down while they were on the open list
+    int peakOpen;       // The most cells on the open list at once
+    int closed;         // Cells in the closed set when the search ended
+
+    // Filled in by Asolution
+    int pathLength;
+    int pathCost;
+    long setupNanos;    // Building the engine and any structure it caches, like the pyramid
+    long searchNanos;
+    long reconstructNanos; // Turning the search state into a PackedPath
+
+    public int getExpanded() {
+        return expanded;
+    }
+
+    public int getGenerated() {
+        return generated;
+    }
+
+    public int getDecreaseKeys() {
+        return decreaseKeys;
+    }
+
+    public int getPeakOpen() {
+        return peakOpen;
+    }
+
+    public int getClosed() {
+        return closed;
+    }
+
+    /**
+     * @return The number of cells on the path, or 0 if there isn't one.
+     */
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    /**
+     * @return The cost of the path in the units of the step costs, or 0 if there isn't one.
+     */
+    public int getPathCost() {
+        return pathCost;
+    }
+
+    public long getSetupNanos() {
+        return setupNanos;
+    }
+
+    public long getSearchNanos() {
+        return searchNanos;
+    }
+
+    public long getReconstructNanos() {
+        return reconstructNanos;
+    }
+
+    /**
+     * Records that a cell went on the open list for the first time.
+     * @param openSize The size of the open list after the push
+     */
+    void generated(int openSize) {
+        generated++;
+        if (openSize > peakOpen)
+            peakOpen = openSize;
+    }
+
+    /**
+     * Adds the search counts of another solve into these, such as one level of a multi-level search.
+     */
+    void add(SolveStats other) {
+        expanded += other.expanded;
+        generated += other.generated;
+        decreaseKeys += other.decreaseKeys;
+        peakOpen = Math.max(peakOpen, other.peakOpen);
+        closed += other.closed;
+    }
+
+    @Override
+    public String toString() {
+        return "expanded " + expanded + ", generated " + generated + ", decrease-keys " + decreaseKeys
+                + ", peak open " + peakOpen + ", closed " + closed
+                + ", path " + pathLength + " cells costing " + pathCost
+                + ", setup " + setupNanos / 1000 + " us, search " + searchNanos / 1000
+                + " us, reconstruct " + reconstructNanos / 1000 + " us";
+    }
+}
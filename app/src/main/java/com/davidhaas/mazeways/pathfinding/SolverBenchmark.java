@@ -0,0 +1,46 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Name: SolverBenchmark
+ * Purpose: Times the search engines and open lists against each other on a real maze, so that
+ * they can be compared on the photographed mazes the app actually sees.
+ */
+public class SolverBenchmark {
+    private static final String TAG = "SolverBenchmark";
+
+    /**
+     * Solves the same maze with the original PriorityQueue engine, the binary heap and the bucket
+     * queue, and logs the median solve time of each with the search counts of the last run.
+     * @param solution The maze with its start and finish already found
+     * @param runs The number of times to solve with each open list
+     * @return The report that was logged
+     */
+    public static String compareQueues(Asolution solution, int runs) {
+        Asolution.Engine[] engines = {Asolution.Engine.CELL, Asolution.Engine.GRID, Asolution.Engine.GRID};
+        Asolution.Queue[] queues = {Asolution.Queue.HEAP, Asolution.Queue.HEAP, Asolution.Queue.BUCKET};
+        String[] names = {"PriorityQueue", "IndexedHeap", "BucketQueue"};
+
+        StringBuilder report = new StringBuilder();
+        for (int k = 0; k < engines.length; k++) {
+            long[] times = new long[runs];
+            SolveStats stats = null;
+            for (int r = 0; r < runs; r++) {
+                long startTime = System.nanoTime();
+                stats = solution.solve(engines[k], queues[k], new SolveControl()).getStats();
+                times[r] = System.nanoTime() - startTime;
+            }
+            Arrays.sort(times);
+
+            String line = names[k] + ": median " + times[runs / 2] / 1000000 + " ms, path length "
+                    + stats.getPathLength() + ", expanded " + stats.getExpanded()
+                    + ", decrease-keys " + stats.getDecreaseKeys() + ", peak open " + stats.getPeakOpen();
+            Log.i(TAG, "compareQueues: " + line);
+            report.append(line).append('\n');
+        }
+        return report.toString();
+    }
+}
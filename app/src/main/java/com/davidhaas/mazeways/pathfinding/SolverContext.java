@@ -0,0 +1,160 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Name: SolverContext
+ * Purpose: The per-cell search state of the grid engines, kept from one solve to the next so that
+ * once it has grown to the size of the maze a solve allocates next to nothing.
+ *
+ * Clearing the state between solves doesn't touch every cell. Whether a cell is open or closed is
+ * stamped with a generation number, so bumping the generation forgets every stamp at once. The
+ * g-costs have to read INFINITY for cells the current solve hasn't reached, because the
+ * bidirectional engine reads the other side's costs from another thread without a stamp, so the
+ * cells that were given a cost are remembered and only those are put back.
+ *
+ * A context must only be used by one solve at a time. acquire and release hand them out from a
+ * small shared pool.
+ */
+final class SolverContext {
+    static final int INFINITY = Integer.MAX_VALUE;
+    private static final int POOL_SIZE = 2;
+    private static final ArrayDeque<SolverContext> pool = new ArrayDeque<>();
+
+    int[] gCost;  // INFINITY for every cell that the current solve hasn't reached
+    int[] parent;
+    private int[] mark; // generation for open cells and generation + 1 for closed ones
+    private int generation = 2;
+    private final IntList touched = new IntList(1024);
+    private IndexedHeap heap;
+    private BucketQueue buckets;
+    private int capacity;
+
+    /**
+     * @param cellCount The number of cells the context has to hold
+     */
+    SolverContext(int cellCount) {
+        ensureCapacity(cellCount);
+    }
+
+    /**
+     * Takes a context from the pool, or creates one if the pool is empty.
+     * @param cellCount The number of cells the context has to hold
+     */
+    static SolverContext acquire(int cellCount) {
+        SolverContext context;
+        synchronized (pool) {
+            context = pool.poll();
+        }
+        if (context == null)
+            return new SolverContext(cellCount);
+        context.ensureCapacity(cellCount);
+        return context;
+    }
+
+    /**
+     * Clears a context and gives it back to the pool. It must not be used again by the caller.
+     */
+    static void release(SolverContext context) {
+        context.reset();
+        synchronized (pool) {
+            if (pool.size() < POOL_SIZE)
+                pool.push(context);
+        }
+    }
+
+    /**
+     * Forgets the previous solve, in time proportional to the number of cells it reached.
+     */
+    void reset() {
+        for (int k = 0; k < touched.size(); k++)
+            gCost[touched.get(k)] = INFINITY;
+        touched.clear();
+
+        generation += 2;
+        if (generation > Integer.MAX_VALUE - 2) {
+            Arrays.fill(mark, 0);
+            generation = 2;
+        }
+
+        if (heap != null)
+            heap.clear();
+        if (buckets != null)
+            buckets.clear();
+    }
+
+    /**
+     * Forgets which cells are open or closed but keeps their costs and parents, for searches like
+     * ARA* that start a new pass from the state of the last one. A cell stamped open again is
+     * remembered a second time, which only costs a repeated reset.
+     */
+    void nextIteration() {
+        generation += 2;
+        if (generation > Integer.MAX_VALUE - 2) {
+            Arrays.fill(mark, 0);
+            generation = 2;
+        }
+    }
+
+    boolean isOpen(int cell) {
+        return mark[cell] == generation;
+    }
+
+    boolean isClosed(int cell) {
+        return mark[cell] == generation + 1;
+    }
+
+    /**
+     * Marks a cell open. The first time in a solve, it's also remembered so its g-cost can be reset.
+     */
+    void open(int cell) {
+        if (mark[cell] < generation)
+            touched.add(cell);
+        mark[cell] = generation;
+    }
+
+    void close(int cell) {
+        mark[cell] = generation + 1;
+    }
+
+    /**
+     * @return The context's binary heap, empty at the start of each solve.
+     */
+    OpenList heap() {
+        if (heap == null)
+            heap = new IndexedHeap(capacity);
+        return heap;
+    }
+
+    /**
+     * @return The context's bucket queue, empty at the start of each solve.
+     */
+    OpenList bucketQueue() {
+        if (buckets == null)
+            buckets = new BucketQueue(capacity);
+        return buckets;
+    }
+
+    /**
+     * @return The bytes held by the per-cell arrays, not counting the open lists.
+     */
+    long getAllocatedBytes() {
+        return 12L * capacity + 4L * touched.size();
+    }
+
+    private void ensureCapacity(int cellCount) {
+        if (cellCount <= capacity)
+            return;
+
+        capacity = cellCount;
+        gCost = new int[cellCount];
+        Arrays.fill(gCost, INFINITY);
+        parent = new int[cellCount];
+        mark = new int[cellCount];
+        generation = 2;
+        touched.clear();
+        heap = null;
+        buckets = null;
+    }
+}
@@ -0,0 +1,73 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Name: SolverPool
+ * Purpose: The one set of worker threads shared by everything in the package that runs at once:
+ * the engines of a portfolio solve, the buckets DeltaStepping splits and the bands of
+ * BoundaryProfiles. One pool of a thread per core keeps them from oversubscribing the cores
+ * between them.
+ *
+ * A portfolio engine that splits its own work runs on the pool, so it can't just wait for its
+ * pieces, which may be queued behind other engines with every thread busy. Work is split with
+ * fork and join instead, and join runs any piece no thread has started yet on the caller.
+ */
+final class SolverPool {
+    static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static ExecutorService executor; // Created the first time anything uses the pool
+
+    private SolverPool() {
+    }
+
+    static synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SolverPool");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Queues a piece of split work. The piece mustn't wait on the pool itself.
+     * @return The piece, for join
+     */
+    static <T> FutureTask<T> fork(Callable<T> piece) {
+        FutureTask<T> task = new FutureTask<>(piece);
+        executor().execute(task);
+        return task;
+    }
+
+    /**
+     * Waits for forked pieces, first running on this thread any that no thread has started. A
+     * piece that has started is running on a thread of its own, so the wait never depends on the
+     * pool having a free thread.
+     * @throws InterruptedException If this thread is interrupted while a piece is still running
+     * on another. Every piece has been started by then, but some may not have finished.
+     */
+    static void join(List<? extends FutureTask<?>> pieces) throws InterruptedException {
+        // Running a started or finished FutureTask does nothing
+        for (FutureTask<?> piece : pieces)
+            piece.run();
+        for (FutureTask<?> piece : pieces) {
+            try {
+                piece.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+}
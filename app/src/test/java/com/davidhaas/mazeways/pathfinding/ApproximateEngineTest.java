@@ -0,0 +1,80 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the engines that trade the shortest path for speed still find a valid path whenever
+ * there is one, and that it costs no more than a bound over the shortest. The bounds leave some
+ * room over the worst seen on these mazes, so a change that makes the paths much worse fails.
+ */
+public class ApproximateEngineTest {
+    private static final int QUERIES = 8;
+    private static final double HIERARCHICAL_BOUND = 1.2; // Crossing only at cluster transitions
+    private static final double SKELETON_BOUND = 1.6;     // Following the middle of each corridor
+    private static final double MULTIRES_BOUND = 2.5;     // Pooling can close narrow gaps and force a detour
+
+    @Test
+    public void hierarchical_isWithinBound() {
+        Random random = new Random(21);
+        for (MazeGrid maze : mazes(random)) {
+            ClusterGraph graph = new ClusterGraph(maze, 32);
+            for (int q = 0; q < QUERIES; q++) {
+                int[] s = TestMazes.freeCell(random, maze), e = TestMazes.freeCell(random, maze);
+                check("HIERARCHICAL", HIERARCHICAL_BOUND, maze, new HierarchicalSolver(graph, s[0], s[1], e[0], e[1]), s, e);
+            }
+        }
+    }
+
+    @Test
+    public void skeleton_isWithinBound() {
+        Random random = new Random(22);
+        for (MazeGrid maze : mazes(random)) {
+            CorridorGraph graph = new CorridorGraph(maze);
+            for (int q = 0; q < QUERIES; q++) {
+                int[] s = TestMazes.freeCell(random, maze), e = TestMazes.freeCell(random, maze);
+                check("SKELETON", SKELETON_BOUND, maze, new CorridorSolver(graph, s[0], s[1], e[0], e[1]), s, e);
+            }
+        }
+    }
+
+    @Test
+    public void multires_isWithinBound() {
+        Random random = new Random(23);
+        for (MazeGrid maze : mazes(random)) {
+            GridPyramid pyramid = new GridPyramid(maze, 64);
+            for (int q = 0; q < QUERIES; q++) {
+                int[] s = TestMazes.freeCell(random, maze), e = TestMazes.freeCell(random, maze);
+                check("MULTIRES", MULTIRES_BOUND, maze, new MultiResolutionSolver(pyramid, s[0], s[1], e[0], e[1]), s, e);
+            }
+        }
+    }
+
+    private static void check(String name, double bound, MazeGrid maze, PathSolver search, int[] s, int[] e) {
+        search.solve();
+        PackedPath path = search.getPackedPath();
+        int shortest = TestMazes.shortest(maze, s[0], s[1], e[0], e[1]);
+        if (shortest == -1) {
+            assertNull(name + " found a path where there's none", path);
+            return;
+        }
+        int cost = TestMazes.checkPath(maze, path, s[0], s[1], e[0], e[1]);
+        assertTrue(name + " beat the shortest path", cost >= shortest);
+        assertTrue(name + " cost " + cost + " against " + shortest, cost <= bound * shortest);
+    }
+
+    // Perfect mazes of several corridor and wall widths, and random ones with unconnected pairs
+    private static MazeGrid[] mazes(Random random) {
+        return new MazeGrid[]{
+                TestMazes.random(random, 200, 150, 20),
+                TestMazes.random(random, 160, 120, 40),
+                TestMazes.perfect(random, 12, 15, 5, 2, 0, TestMazes.TOP, 0, TestMazes.BOTTOM, 3),
+                TestMazes.perfect(random, 20, 16, 8, 4, 0, TestMazes.LEFT, 1, TestMazes.RIGHT, 7),
+                TestMazes.perfect(random, 25, 30, 4, 3, 2, TestMazes.TOP, 5, TestMazes.BOTTOM, 20),
+                TestMazes.perfect(random, 16, 16, 6, 2, 0, TestMazes.LEFT, 0, TestMazes.BOTTOM, 15)
+        };
+    }
+}
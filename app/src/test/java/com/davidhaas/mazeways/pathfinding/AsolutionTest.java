@@ -0,0 +1,288 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks Asolution's portfolio solve, and the searches it hands to the edit mode, against a single
+ * GRID solve of the same maze, and its fallback entrance guess against the column and row scans
+ * it used to make.
+ */
+public class AsolutionTest {
+
+    @Test
+    public void solvePortfolio_findsShortest() {
+        Random random = new Random(20);
+        for (int run = 0; run < 4; run++) {
+            MazeGrid maze = perfectMaze(random);
+            Asolution solution = new Asolution(maze);
+            PackedPath expected = solveGrid(solution);
+
+            SolveResult result = solution.solvePortfolio(new SolveControl());
+            assertEquals(SolveResult.Status.SOLVED, result.getStatus());
+            assertNotNull(result.getEngine());
+            int last = expected.length() - 1;
+            assertEquals(expected.getCost(), TestMazes.checkPath(maze, result.getPath(),
+                    expected.getI(0), expected.getJ(0), expected.getI(last), expected.getJ(last)));
+        }
+    }
+
+    @Test
+    public void solvePortfolio_reportsWinner() {
+        Asolution solution = new Asolution(perfectMaze(new Random(21)));
+        PackedPath expected = solveGrid(solution);
+
+        solution.setPortfolio(Asolution.Engine.SKELETON);
+        SolveResult result = solution.solvePortfolio(new SolveControl());
+        assertEquals(SolveResult.Status.SOLVED, result.getStatus());
+        assertEquals(Asolution.Engine.SKELETON, result.getEngine());
+        assertTrue(result.getPath().getCost() >= expected.getCost());
+    }
+
+    @Test
+    public void solvePortfolio_cancelled() {
+        Asolution solution = new Asolution(perfectMaze(new Random(22)));
+        SolveControl control = new SolveControl();
+        control.cancel();
+        SolveResult result = solution.solvePortfolio(control);
+        assertEquals(SolveResult.Status.CANCELLED, result.getStatus());
+        assertNull(result.getPath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setPortfolio_rejectsEmpty() {
+        new Asolution(perfectMaze(new Random(23))).setPortfolio();
+    }
+
+    @Test
+    public void replannerAndField_stayInsideOuterWall() {
+        Random random = new Random(9);
+        for (int margin = 5; margin <= 20; margin += 5) {
+            // Both openings on the top, so the way round the outside is far shorter than the maze's
+            MazeGrid maze = TestMazes.perfect(random, 16, 20, 10, 3, margin, TestMazes.TOP, 1, TestMazes.TOP, 18);
+            Asolution solution = new Asolution(maze);
+            assertFalse(solution.getEntranceCandidates().isEmpty());
+            EntranceFinder.Candidate entrances = solution.getEntranceCandidates().get(0);
+            int endI = entrances.getEndI(), endJ = entrances.getEndJ();
+
+            SolveResult result = solution.solve(Asolution.Engine.GRID, Asolution.Queue.BUCKET, new SolveControl());
+            assertEquals(SolveResult.Status.SOLVED, result.getStatus());
+            int expected = result.getPath().getCost();
+
+            DStarLite replanner = solution.createReplanner();
+            replanner.solve();
+            assertEquals(expected, replanner.getPackedPath().getCost());
+
+            DistanceField field = solution.createDistanceField();
+            assertTrue(field.compute(new SolveControl()));
+            assertEquals(expected, field.getDistance(endI, endJ));
+
+            // Edits go into the replanner's own copy, not the maze the field reads
+            int width = maze.getWidth();
+            PackedPath path = replanner.getPackedPath();
+            int cell = path.getCell(path.length() / 2);
+            assertTrue(replanner.setWall(cell / width, cell % width, true));
+            assertFalse(field.getMaze().isWall(cell / width, cell % width));
+        }
+    }
+
+    @Test
+    public void startFinish2_matchesOldScans() {
+        Random random = new Random(22);
+        int[][] sides = {
+                {TestMazes.TOP, 1, TestMazes.BOTTOM, 18},
+                {TestMazes.LEFT, 3, TestMazes.RIGHT, 12},
+                {TestMazes.TOP, 0, TestMazes.LEFT, 15},
+                {TestMazes.BOTTOM, 19, TestMazes.RIGHT, 0}
+        };
+        Asolution solution = new Asolution(perfectMaze(random));
+        for (int margin = 0; margin <= 5; margin++) {
+            for (int[] o : sides) {
+                MazeGrid maze = TestMazes.perfect(random, 16, 20, 10, 3, margin, o[0], o[1], o[2], o[3]);
+                assertArrayEquals(oldStartFinish2(maze), solution.startFinish2(maze));
+            }
+        }
+        for (int run = 0; run < 10; run++) {
+            MazeGrid maze = TestMazes.random(random, 100 + random.nextInt(300), 100 + random.nextInt(300), 15);
+            assertArrayEquals(oldStartFinish2(maze), solution.startFinish2(maze));
+        }
+    }
+
+    @Test
+    public void startFinish2_startsFromFirstRealWall() {
+        // The paper around the maze is wider than the ends of each side that are skipped, so the
+        // first position of every side has no wall
+        Random random = new Random(23);
+        Asolution solution = new Asolution(perfectMaze(random));
+        MazeGrid maze = TestMazes.perfect(random, 16, 20, 10, 3, 20, TestMazes.TOP, 1, TestMazes.BOTTOM, 18);
+        int[] found = solution.startFinish2(maze);
+        assertFalse(Arrays.equals(oldStartFinish2(maze), found));
+
+        // Both entrances sit in their openings, within the outer wall's thickness
+        String where = Arrays.toString(found);
+        int bottom = maze.getHeight() - 1 - 20;
+        assertTrue(where, found[0] >= 20 && found[0] < 23);
+        assertTrue(where, found[1] >= 20 + 13 + 3 && found[1] < 20 + 2 * 13);
+        assertTrue(where, found[2] > bottom - 3 && found[2] <= bottom);
+        assertTrue(where, found[3] >= 20 + 18 * 13 + 3 && found[3] < 20 + 19 * 13);
+    }
+
+    // A maze with an opening in its top and bottom walls, like a printed one cropped to its edges
+    private static MazeGrid perfectMaze(Random random) {
+        return TestMazes.perfect(random, 16, 20, 10, 3, 0, TestMazes.TOP, 1, TestMazes.BOTTOM, 18);
+    }
+
+    private static PackedPath solveGrid(Asolution solution) {
+        SolveResult result = solution.solve(Asolution.Engine.GRID, Asolution.Queue.BUCKET, new SolveControl());
+        assertEquals(SolveResult.Status.SOLVED, result.getStatus());
+        return result.getPath();
+    }
+
+    // startFinish2 as it was before it read BoundaryProfiles, scanning down each column and along
+    // each row
+    private static int[] oldStartFinish2(MazeGrid maze) {
+        final int width = maze.getWidth(), height = maze.getHeight();
+
+        int dy = 0;
+        int prevY = 0;
+        int startX = (int) (width * .03);
+        int endX = (int) (width * .97);
+        int firstTB_Y = 0;
+        int[] top_bottom_dys = new int[endX - startX];
+        for (int x = startX; x < endX; x++) {
+            for (int y = 0; y < height; y++) {
+                if (maze.isWall(y, x)) {
+                    if (x > startX)
+                        dy = y - prevY;
+                    else
+                        firstTB_Y = y;
+                    top_bottom_dys[x - startX] = dy;
+                    prevY = y;
+                    break;
+                }
+            }
+        }
+
+        dy = 0;
+        prevY = 0;
+        int firstBT_Y = 0;
+        int[] bottom_top_dys = new int[endX - startX];
+        for (int x = startX; x < endX; x++) {
+            for (int y = height - 1; y >= 0; y--) {
+                if (maze.isWall(y, x)) {
+                    if (x > startX)
+                        dy = prevY - y;
+                    else
+                        firstBT_Y = y;
+                    bottom_top_dys[x - startX] = dy;
+                    prevY = y;
+                    break;
+                }
+            }
+        }
+
+        int dx = 0;
+        int prevX = 0;
+        int startY = (int) (height * .03);
+        int endY = (int) (height * .97);
+        int firstLR_X = 0;
+        int[] left_right_dxs = new int[endY - startY];
+        for (int y = startY; y < endY; y++) {
+            int x = maze.nextWall(y, 0);
+            if (x != -1) {
+                if (y > startY)
+                    dx = x - prevX;
+                else
+                    firstLR_X = x;
+                left_right_dxs[y - startY] = dx;
+                prevX = x;
+            }
+        }
+
+        dx = 0;
+        prevX = 0;
+        int firstRL_X = 0;
+        int[] right_left_dxs = new int[endY - startY];
+        for (int y = startY; y < endY; y++) {
+            int x = maze.prevWall(y, width - 1);
+            if (x != -1) {
+                if (y > startY)
+                    dx = prevX - x;
+                else
+                    firstRL_X = x;
+                right_left_dxs[y - startY] = dx;
+                prevX = x;
+            }
+        }
+
+        int[][][] extrema = {findExtrema(top_bottom_dys), findExtrema(bottom_top_dys),
+                findExtrema(left_right_dxs), findExtrema(right_left_dxs)};
+        int largest = -1, largestIndx = 0, secondLargest = -1, secondIndx = 1, diff;
+        for (int i = 0; i < extrema.length; i++) {
+            diff = Math.abs(extrema[i][0][0] - extrema[i][1][0]);
+            if (diff > largest) {
+                secondLargest = largest;
+                secondIndx = largestIndx;
+                largest = diff;
+                largestIndx = i;
+            } else if (diff > secondLargest) {
+                secondLargest = diff;
+                secondIndx = i;
+            }
+        }
+
+        int[] extremaIndxs = {largestIndx, secondIndx};
+        int[] startEnd = new int[4];
+        for (int i = 0; i < 4; i += 2) {
+            int indx = extremaIndxs[i / 2];
+            int[][] pair = extrema[indx];
+            switch (indx) {
+                case 0:
+                    startEnd[i + 1] = startX + pair[0][1] + (pair[1][1] - pair[0][1]) / 2;
+                    startEnd[i] = firstTB_Y + sumUpTo(top_bottom_dys, pair[0][1]);
+                    break;
+                case 1:
+                    startEnd[i + 1] = startX + pair[0][1] + (pair[1][1] - pair[0][1]) / 2;
+                    startEnd[i] = firstBT_Y - sumUpTo(bottom_top_dys, pair[0][1]);
+                    break;
+                case 2:
+                    startEnd[i + 1] = firstLR_X + sumUpTo(left_right_dxs, pair[0][1]);
+                    startEnd[i] = startY + pair[0][1] + (pair[1][1] - pair[0][1]) / 2;
+                    break;
+                case 3:
+                    startEnd[i + 1] = firstRL_X - sumUpTo(right_left_dxs, pair[0][1]);
+                    startEnd[i] = startY + pair[0][1] + (pair[1][1] - pair[0][1]) / 2;
+                    break;
+            }
+        }
+        return startEnd;
+    }
+
+    private static int[][] findExtrema(int[] arr) {
+        int max = arr[0], maxIndx = 0, min = arr[0], minIndx = 0;
+        for (int i = 0; i < arr.length; i++) {
+            if (arr[i] > max) {
+                max = arr[i];
+                maxIndx = i;
+                min = 0;
+                minIndx = -1;
+            }
+            if (i > maxIndx && arr[i] < min) {
+                min = arr[i];
+                minIndx = i;
+            }
+        }
+        return new int[][]{{max, maxIndx}, {min, minIndx}};
+    }
+
+    private static int sumUpTo(int[] arr, int maxIndex) {
+        int sum = 0;
+        for (int i = 0; i < maxIndex; i++)
+            sum += arr[i];
+        return sum;
+    }
+}
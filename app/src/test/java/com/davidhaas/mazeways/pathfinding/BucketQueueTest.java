@@ -0,0 +1,94 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs a BucketQueue through the same monotone pushes, decrease-keys and pops a search makes and
+ * checks each pop against the lowest key still queued and, among those, the highest tie-breaker.
+ */
+public class BucketQueueTest {
+    private static final int CELLS = 2000;
+
+    @Test
+    public void pops_lowestKey() {
+        Random random = new Random(3);
+        BucketQueue queue = new BucketQueue(CELLS);
+        int[] keys = new int[CELLS]; // The queued key of each cell, or -1
+        int[] ties = new int[CELLS];
+        Arrays.fill(keys, -1);
+        int queued = 0, popped = 0;
+
+        for (int step = 0; step < 50000; step++) {
+            int action = random.nextInt(10);
+            int cell = random.nextInt(CELLS);
+            if (action < 4 && keys[cell] == -1) {
+                // Spans far enough past the lowest key to make the circle of buckets grow
+                keys[cell] = popped + random.nextInt(step < 25000 ? 40 : 300);
+                ties[cell] = random.nextInt(100);
+                queue.push(cell, keys[cell], ties[cell]);
+                queued++;
+            } else if (action < 6 && keys[cell] > popped) {
+                keys[cell] = popped + random.nextInt(keys[cell] - popped + 1);
+                ties[cell] = random.nextInt(100);
+                queue.decreaseKey(cell, keys[cell], ties[cell]);
+            } else if (queued > 0) {
+                int lowest = Integer.MAX_VALUE, highestTie = -1;
+                for (int c = 0; c < CELLS; c++) {
+                    if (keys[c] == -1)
+                        continue;
+                    if (keys[c] < lowest || keys[c] == lowest && ties[c] > highestTie) {
+                        lowest = keys[c];
+                        highestTie = ties[c];
+                    }
+                }
+                assertEquals(lowest, queue.minKey());
+                int node = queue.pop();
+                assertEquals(lowest, keys[node]);
+                assertEquals(highestTie, ties[node]);
+                assertFalse(queue.contains(node));
+                keys[node] = -1;
+                queued--;
+                popped = lowest;
+            }
+            assertEquals(queued, queue.size());
+            assertEquals(queued == 0, queue.isEmpty());
+            assertEquals(keys[cell] != -1, queue.contains(cell));
+        }
+    }
+
+    @Test
+    public void equalKeys_comeOutHighestTieFirst() {
+        BucketQueue queue = new BucketQueue(10);
+        queue.push(1, 20, 3);
+        queue.push(2, 20, 9);
+        queue.push(3, 20, 0);
+        queue.push(4, 24, 12);
+        queue.decreaseKey(4, 20, 5);
+        assertEquals(2, queue.pop());
+        assertEquals(4, queue.pop());
+        assertEquals(1, queue.pop());
+        assertEquals(3, queue.pop());
+    }
+
+    @Test
+    public void clear_emptiesQueue() {
+        BucketQueue queue = new BucketQueue(10);
+        queue.push(1, 30, 0);
+        queue.push(2, 44, 0);
+        queue.push(3, 30, 5);
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.contains(1));
+        assertEquals(0, queue.getOperations());
+
+        queue.push(2, 7, 0);
+        assertEquals(7, queue.minKey());
+        assertEquals(2, queue.pop());
+        assertTrue(queue.isEmpty());
+    }
+}
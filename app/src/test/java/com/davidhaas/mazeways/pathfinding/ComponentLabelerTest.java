@@ -0,0 +1,59 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the labeller's components against the pixels a plain Dijkstra reaches, with the same
+ * diagonal steps as the engines, on mazes wide enough to span several words per row.
+ */
+public class ComponentLabelerTest {
+    private static final int QUERIES = 10;
+
+    @Test
+    public void components_matchReachable() {
+        Random random = new Random(9);
+        MazeGrid[] mazes = {
+                TestMazes.random(random, 1, 1, 0),
+                TestMazes.random(random, 70, 3, 30),
+                TestMazes.random(random, 130, 90, 45),
+                TestMazes.random(random, 200, 60, 55),
+                TestMazes.perfect(random, 10, 12, 4, 2, 1, TestMazes.TOP, 0, TestMazes.BOTTOM, 11)
+        };
+        for (MazeGrid maze : mazes) {
+            int width = maze.getWidth(), height = maze.getHeight();
+            ComponentLabeler labeler = new ComponentLabeler(maze);
+            for (int q = 0; q < QUERIES; q++) {
+                int[] from = TestMazes.freeCell(random, maze);
+                int[] dist = TestMazes.distances(maze, from[0], from[1]);
+                MazeGrid isolated = labeler.isolate(from[0], from[1]);
+
+                int reached = 0;
+                for (int i = 0; i < height; i++) {
+                    for (int j = 0; j < width; j++) {
+                        boolean connected = dist[i * width + j] != -1;
+                        if (connected)
+                            reached++;
+                        assertEquals(connected, labeler.isSameComponent(from[0], from[1], i, j));
+                        assertEquals(!connected, isolated.isWall(i, j));
+                    }
+                }
+                assertEquals(reached, labeler.componentSize(from[0], from[1]));
+            }
+        }
+    }
+
+    @Test
+    public void wall_isInNoComponent() {
+        MazeGrid maze = new MazeGrid(5, 3);
+        maze.setWall(1, 2, true);
+        ComponentLabeler labeler = new ComponentLabeler(maze);
+        assertEquals(0, labeler.componentSize(1, 2));
+        assertFalse(labeler.isSameComponent(1, 2, 1, 2));
+        assertFalse(labeler.isSameComponent(0, 0, 1, 2));
+        assertEquals(14, labeler.componentSize(0, 0));
+    }
+}
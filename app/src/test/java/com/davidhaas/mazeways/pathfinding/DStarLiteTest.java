@@ -0,0 +1,133 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the repaired paths of D* Lite stay as cheap as a fresh Dijkstra's on the edited maze
+ * through random runs of painted and erased walls and moved entrances.
+ */
+public class DStarLiteTest {
+    private static final int EDITS = 60;
+
+    @Test
+    public void repairs_matchFreshSearch() {
+        Random random = new Random(11);
+        for (int run = 0; run < 8; run++) {
+            MazeGrid maze = run % 2 == 0 ? TestMazes.random(random, 48, 36, 25 + run * 2)
+                    : TestMazes.perfect(random, 6, 8, 3, 1, 0, TestMazes.TOP, 0, TestMazes.BOTTOM, 7);
+            int[] start = TestMazes.freeCell(random, maze), end = TestMazes.freeCell(random, maze);
+            DStarLite search = new DStarLite(maze, start[0], start[1], end[0], end[1]);
+            search.solve();
+            check(search);
+
+            for (int e = 0; e < EDITS; e++) {
+                int action = random.nextInt(10);
+                if (action < 6) {
+                    // A stroke of a few walls, solved once at the end like the edit mode does
+                    boolean wall = random.nextBoolean();
+                    for (int k = 1 + random.nextInt(4); k > 0; k--) {
+                        int i = random.nextInt(maze.getHeight()), j = random.nextInt(maze.getWidth());
+                        int cell = i * maze.getWidth() + j;
+                        if (cell != search.getStart() && cell != search.getEnd())
+                            search.setWall(i, j, wall);
+                    }
+                } else {
+                    int[] cell = TestMazes.freeCell(random, maze);
+                    int index = cell[0] * maze.getWidth() + cell[1];
+                    if (index == search.getStart() || index == search.getEnd())
+                        continue;
+                    if (action < 8)
+                        search.moveStart(cell[0], cell[1]);
+                    else
+                        search.moveEnd(cell[0], cell[1]);
+                }
+                search.solve();
+                check(search);
+            }
+        }
+    }
+
+    @Test
+    public void stoppedSolve_resumesToShortest() {
+        Random random = new Random(13);
+        for (int run = 0; run < 6; run++) {
+            MazeGrid maze = TestMazes.perfect(random, 30, 40, 3, 1, 0, TestMazes.TOP, 0, TestMazes.BOTTOM, 39);
+            int[] start = TestMazes.freeCell(random, maze), end = TestMazes.freeCell(random, maze);
+            DStarLite search = new DStarLite(maze, start[0], start[1], end[0], end[1]);
+
+            // Stops the first search and then a repair part of the way through, and then again
+            // straight away a few times, before letting it finish
+            for (int pass = 0; pass < 2; pass++) {
+                search.setSolveControl(cancelledAtFirstReport());
+                search.solve();
+                for (int k = 0; k < 20; k++) {
+                    SolveControl control = new SolveControl();
+                    control.cancel();
+                    search.setSolveControl(control);
+                    search.solve();
+                }
+                search.setSolveControl(new SolveControl());
+                search.solve();
+                check(search);
+
+                for (int k = 0; k < 40; k++) {
+                    int i = random.nextInt(maze.getHeight()), j = random.nextInt(maze.getWidth());
+                    int cell = i * maze.getWidth() + j;
+                    if (cell != search.getStart() && cell != search.getEnd())
+                        search.setWall(i, j, random.nextBoolean());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void setWall_reportsChange() {
+        MazeGrid maze = new MazeGrid(5, 5);
+        DStarLite search = new DStarLite(maze, 0, 0, 4, 4);
+        assertTrue(search.setWall(2, 2, true));
+        assertFalse(search.setWall(2, 2, true));
+        assertTrue(maze.isWall(2, 2));
+        assertTrue(search.setWall(2, 2, false));
+    }
+
+    @Test
+    public void walledOffEnd_hasNoPath() {
+        MazeGrid maze = new MazeGrid(7, 7);
+        DStarLite search = new DStarLite(maze, 0, 0, 6, 6);
+        search.solve();
+        check(search);
+
+        for (int k = 0; k < 7; k++)
+            search.setWall(3, k, true);
+        search.solve();
+        assertNull(search.getPackedPath());
+
+        search.setWall(3, 5, false);
+        search.solve();
+        check(search);
+    }
+
+    // A control that cancels the solve when it first reports progress
+    private static SolveControl cancelledAtFirstReport() {
+        final SolveControl control = new SolveControl();
+        control.setProgressListener(new SolveControl.ProgressListener() {
+            @Override
+            public void onProgress(int expanded, int fCost) {
+                control.cancel();
+            }
+        });
+        return control;
+    }
+
+    private static void check(DStarLite search) {
+        MazeGrid maze = search.getMaze();
+        int width = maze.getWidth();
+        int start = search.getStart(), end = search.getEnd();
+        TestMazes.checkShortest("D* Lite", maze, search.getPackedPath(),
+                start / width, start % width, end / width, end % width);
+    }
+}
@@ -0,0 +1,56 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks every distance of a DistanceField, and the paths read out of it, against Dijkstra.
+ */
+public class DistanceFieldTest {
+
+    @Test
+    public void distances_matchDijkstra() {
+        Random random = new Random(5);
+        MazeGrid[] mazes = {
+                TestMazes.random(random, 60, 40, 20),
+                TestMazes.random(random, 61, 43, 40),
+                TestMazes.perfect(random, 10, 12, 3, 2, 2, TestMazes.LEFT, 0, TestMazes.RIGHT, 9)
+        };
+        for (MazeGrid maze : mazes) {
+            int width = maze.getWidth();
+            int[] start = TestMazes.freeCell(random, maze);
+            DistanceField field = new DistanceField(maze, start[0], start[1]);
+            assertTrue(field.compute(new SolveControl()));
+
+            int[] expected = TestMazes.distances(maze, start[0], start[1]);
+            int max = 0;
+            for (int i = 0; i < maze.getHeight(); i++) {
+                for (int j = 0; j < width; j++) {
+                    int distance = expected[i * width + j];
+                    max = Math.max(max, distance);
+                    if (distance == -1) {
+                        assertEquals(DistanceField.UNREACHABLE, field.getDistance(i, j));
+                        assertNull(field.pathTo(i, j));
+                    } else {
+                        assertEquals(distance, field.getDistance(i, j));
+                        assertEquals(distance, TestMazes.checkPath(maze, field.pathTo(i, j), start[0], start[1], i, j));
+                    }
+                }
+            }
+            assertEquals(max, field.getMaxDistance());
+        }
+    }
+
+    @Test
+    public void wallStart_reachesNothing() {
+        MazeGrid maze = new MazeGrid(4, 4);
+        maze.setWall(1, 1, true);
+        DistanceField field = new DistanceField(maze, 1, 1);
+        assertTrue(field.compute(new SolveControl()));
+        assertEquals(DistanceField.UNREACHABLE, field.getDistance(0, 0));
+        assertNull(field.pathTo(3, 3));
+    }
+}
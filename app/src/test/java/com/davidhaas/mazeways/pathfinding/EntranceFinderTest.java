@@ -0,0 +1,88 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the openings EntranceFinder ranks first are the ones cut into a drawn maze's outer
+ * wall, with and without open paper around the maze.
+ */
+public class EntranceFinderTest {
+    private static final int ROWS = 16, COLS = 20, CORRIDOR = 10, WALL = 3;
+    private static final int PITCH = CORRIDOR + WALL;
+
+    @Test
+    public void bestCandidate_isTheOpenings() {
+        Random random = new Random(21);
+        int[][] openings = {
+                {TestMazes.TOP, 1, TestMazes.BOTTOM, 18},
+                {TestMazes.LEFT, 3, TestMazes.RIGHT, 12},
+                {TestMazes.TOP, 2, TestMazes.RIGHT, 14},
+                {TestMazes.TOP, 1, TestMazes.TOP, 18}
+        };
+        for (int margin = 0; margin <= 20; margin += 5) {
+            for (int[] o : openings) {
+                MazeGrid maze = TestMazes.perfect(random, ROWS, COLS, CORRIDOR, WALL, margin, o[0], o[1], o[2], o[3]);
+                MazeGrid copy = new MazeGrid(maze);
+                EntranceFinder finder = new EntranceFinder(maze);
+                String name = "margin " + margin + ", sides " + o[0] + " and " + o[2];
+
+                List<EntranceFinder.Candidate> candidates = finder.getCandidates();
+                assertFalse(name, candidates.isEmpty());
+                for (int k = 1; k < candidates.size(); k++)
+                    assertTrue(candidates.get(k - 1).getConfidence() >= candidates.get(k).getConfidence());
+
+                // The start is the opening nearer the top left
+                EntranceFinder.Candidate best = candidates.get(0);
+                assertInOpening(name, margin, o[0], o[1], best.getStartI(), best.getStartJ());
+                assertInOpening(name, margin, o[2], o[3], best.getEndI(), best.getEndJ());
+
+                // Only the sealed copy has the paper around the maze walled off
+                assertTrue(name, TestMazes.shortest(finder.getSealedMaze(), best.getStartI(), best.getStartJ(),
+                        best.getEndI(), best.getEndJ()) != -1);
+                if (margin > 0) {
+                    assertTrue(finder.getSealedMaze().isWall(0, 0));
+                    assertFalse(maze.isWall(0, 0));
+                }
+                for (int i = 0; i < maze.getHeight(); i++) {
+                    for (int j = 0; j < maze.getWidth(); j++)
+                        assertEquals(copy.isWall(i, j), maze.isWall(i, j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void closedWall_hasNoCandidates() {
+        MazeGrid maze = new MazeGrid(120, 90);
+        for (int i = 10; i < 80; i++) {
+            for (int j = 10; j < 110; j++) {
+                if (i < 13 || i >= 77 || j < 13 || j >= 107)
+                    maze.setWall(i, j, true);
+            }
+        }
+        assertTrue(new EntranceFinder(maze).getCandidates().isEmpty());
+    }
+
+    // Checks that a pixel is in the gap of an opening, within the thickness of the outer wall
+    private static void assertInOpening(String name, int margin, int side, int cell, int i, int j) {
+        int along = side == TestMazes.TOP || side == TestMazes.BOTTOM ? j : i;
+        int across;
+        if (side == TestMazes.TOP)
+            across = i;
+        else if (side == TestMazes.BOTTOM)
+            across = ROWS * PITCH + 2 * margin + WALL - 1 - i;
+        else if (side == TestMazes.LEFT)
+            across = j;
+        else
+            across = COLS * PITCH + 2 * margin + WALL - 1 - j;
+
+        int from = margin + cell * PITCH + WALL;
+        assertTrue(name + ": " + i + ", " + j, along >= from && along < from + CORRIDOR);
+        assertTrue(name + ": " + i + ", " + j, across >= margin && across < margin + WALL);
+    }
+}
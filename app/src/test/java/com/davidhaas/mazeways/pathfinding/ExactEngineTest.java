@@ -0,0 +1,178 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the engines that promise the shortest path find one as cheap as a plain Dijkstra's,
+ * on random mazes with and without a route between the entrances and on perfect mazes.
+ */
+public class ExactEngineTest {
+    private static final int QUERIES = 6; // Start and end pairs per maze
+
+    /**
+     * Creates an engine for a maze and its entrances.
+     */
+    private interface Factory {
+        PathSolver create(MazeGrid maze, int startI, int startJ, int endI, int endJ);
+    }
+
+    @Test
+    public void grid_isShortest() {
+        checkEngine("GRID", new Factory() {
+            @Override
+            public PathSolver create(MazeGrid maze, int si, int sj, int ei, int ej) {
+                return new GridAStar(maze, si, sj, ei, ej);
+            }
+        });
+        checkEngine("GRID over buckets", new Factory() {
+            @Override
+            public PathSolver create(MazeGrid maze, int si, int sj, int ei, int ej) {
+                return new GridAStar(maze, new BucketQueue(maze.getWidth() * maze.getHeight()), si, sj, ei, ej);
+            }
+        });
+    }
+
+    @Test
+    public void jps_isShortest() {
+        checkEngine("JPS", new Factory() {
+            @Override
+            public PathSolver create(MazeGrid maze, int si, int sj, int ei, int ej) {
+                return new JumpPointSearch(maze, si, sj, ei, ej);
+            }
+        });
+        checkEngine("JPS over buckets", new Factory() {
+            @Override
+            public PathSolver create(MazeGrid maze, int si, int sj, int ei, int ej) {
+                return new JumpPointSearch(maze, new BucketQueue(maze.getWidth() * maze.getHeight()), si, sj, ei, ej);
+            }
+        });
+    }
+
+    @Test
+    public void bidirectional_isShortest() {
+        checkEngine("BIDIRECTIONAL", new Factory() {
+            @Override
+            public PathSolver create(MazeGrid maze, int si, int sj, int ei, int ej) {
+                return new BidirectionalAStar(maze, si, sj, ei, ej);
+            }
+        });
+        checkEngine("BIDIRECTIONAL threaded", new Factory() {
+            @Override
+            public PathSolver create(MazeGrid maze, int si, int sj, int ei, int ej) {
+                BidirectionalAStar search = new BidirectionalAStar(maze, si, sj, ei, ej);
+                search.setThreaded(true);
+                return search;
+            }
+        });
+    }
+
+    @Test
+    public void anytime_endsShortest() {
+        checkEngine("ANYTIME", new Factory() {
+            @Override
+            public PathSolver create(MazeGrid maze, int si, int sj, int ei, int ej) {
+                return new AnytimeAStar(maze, si, sj, ei, ej);
+            }
+        });
+    }
+
+    @Test
+    public void parallel_isShortest() {
+        checkEngine("PARALLEL", new Factory() {
+            @Override
+            public PathSolver create(MazeGrid maze, int si, int sj, int ei, int ej) {
+                return new DeltaStepping(maze, si, sj, ei, ej, false);
+            }
+        });
+        checkEngine("PARALLEL threaded", new Factory() {
+            @Override
+            public PathSolver create(MazeGrid maze, int si, int sj, int ei, int ej) {
+                return new DeltaStepping(maze, si, sj, ei, ej, true);
+            }
+        });
+    }
+
+    @Test
+    public void multiGoal_findsNearestPair() {
+        Random random = new Random(7);
+        for (MazeGrid maze : mazes(random)) {
+            int width = maze.getWidth();
+            for (int q = 0; q < QUERIES; q++) {
+                int[] starts = new int[1 + random.nextInt(3)], goals = new int[1 + random.nextInt(3)];
+                for (int k = 0; k < starts.length; k++) {
+                    int[] cell = TestMazes.freeCell(random, maze);
+                    starts[k] = cell[0] * width + cell[1];
+                }
+                for (int k = 0; k < goals.length; k++) {
+                    int[] cell = TestMazes.freeCell(random, maze);
+                    goals[k] = cell[0] * width + cell[1];
+                }
+
+                // The cheapest of the pairs, from one field per start
+                int expected = -1;
+                for (int start : starts) {
+                    int[] dist = TestMazes.distances(maze, start / width, start % width);
+                    for (int goal : goals) {
+                        if (dist[goal] != -1 && (expected == -1 || dist[goal] < expected))
+                            expected = dist[goal];
+                    }
+                }
+
+                MultiGoalAStar search = new MultiGoalAStar(maze, starts, goals);
+                search.solve();
+                PackedPath path = search.getPackedPath();
+                if (expected == -1) {
+                    assertNull(path);
+                    assertEquals(-1, search.getReachedGoal());
+                    continue;
+                }
+                int first = path.getCell(0), last = path.getCell(path.length() - 1);
+                assertTrue(contains(starts, first));
+                assertTrue(contains(goals, last));
+                assertEquals(last, search.getReachedGoal());
+                assertEquals(expected, TestMazes.checkPath(maze, path,
+                        first / width, first % width, last / width, last % width));
+            }
+        }
+    }
+
+    private static void checkEngine(String name, Factory factory) {
+        Random random = new Random(name.hashCode());
+        for (MazeGrid maze : mazes(random)) {
+            for (int q = 0; q < QUERIES; q++) {
+                int[] start = TestMazes.freeCell(random, maze), end = TestMazes.freeCell(random, maze);
+                PathSolver search = factory.create(maze, start[0], start[1], end[0], end[1]);
+                search.solve();
+                TestMazes.checkShortest(name, maze, search.getPackedPath(), start[0], start[1], end[0], end[1]);
+            }
+        }
+    }
+
+    // Open and cluttered random mazes, where some pairs aren't connected, and perfect mazes
+    private static List<MazeGrid> mazes(Random random) {
+        List<MazeGrid> mazes = new ArrayList<>();
+        mazes.add(TestMazes.random(random, 1, 1, 0));
+        mazes.add(TestMazes.random(random, 70, 3, 10));
+        mazes.add(TestMazes.random(random, 64, 48, 20));
+        mazes.add(TestMazes.random(random, 65, 47, 35));
+        mazes.add(TestMazes.random(random, 130, 90, 42));
+        mazes.add(TestMazes.random(random, 400, 300, 15)); // Wide enough fronts to split between threads
+        mazes.add(TestMazes.perfect(random, 8, 10, 3, 1, 0, TestMazes.TOP, 0, TestMazes.BOTTOM, 9));
+        mazes.add(TestMazes.perfect(random, 15, 12, 4, 2, 3, TestMazes.LEFT, 2, TestMazes.RIGHT, 11));
+        return mazes;
+    }
+
+    private static boolean contains(int[] cells, int cell) {
+        for (int c : cells) {
+            if (c == cell)
+                return true;
+        }
+        return false;
+    }
+}
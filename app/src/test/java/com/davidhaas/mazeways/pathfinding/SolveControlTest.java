@@ -0,0 +1,92 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a SolveControl stops the engines when it's cancelled or out of time, and that its
+ * progress reports follow the search.
+ */
+public class SolveControlTest {
+
+    @Test
+    public void cancel_stopsBeforeAnyPath() {
+        MazeGrid maze = longMaze();
+        int[] end = farCorner(maze);
+        PathSolver[] engines = {
+                new GridAStar(maze, 1, 1, end[0], end[1]),
+                new JumpPointSearch(maze, 1, 1, end[0], end[1]),
+                new BidirectionalAStar(maze, 1, 1, end[0], end[1])
+        };
+        for (PathSolver engine : engines) {
+            SolveControl control = new SolveControl();
+            control.cancel();
+            assertTrue(control.isCancelled());
+            engine.setSolveControl(control);
+            engine.solve();
+            assertEquals(SolveResult.Status.CANCELLED, control.getStopReason());
+            assertNull(engine.getPackedPath());
+            assertTrue(engine.getExpandedCount() <= 2);
+        }
+    }
+
+    @Test
+    public void timeLimit_stopsLongSolve() throws Exception {
+        MazeGrid maze = longMaze();
+        int[] end = farCorner(maze);
+        SolveControl control = new SolveControl();
+        control.setTimeLimit(0);
+        Thread.sleep(5);
+        GridAStar search = new GridAStar(maze, 1, 1, end[0], end[1]);
+        search.setSolveControl(control);
+        search.solve();
+        assertEquals(SolveResult.Status.TIMED_OUT, control.getStopReason());
+        assertNull(search.getPackedPath());
+    }
+
+    @Test
+    public void progress_followsSearch() {
+        MazeGrid maze = longMaze();
+        int[] end = farCorner(maze);
+        final List<int[]> reports = new ArrayList<>();
+        SolveControl control = new SolveControl();
+        control.setTimeLimit(60000);
+        control.setProgressListener(new SolveControl.ProgressListener() {
+            @Override
+            public void onProgress(int expanded, int fCost) {
+                reports.add(new int[]{expanded, fCost});
+            }
+        });
+
+        GridAStar search = new GridAStar(maze, 1, 1, end[0], end[1]);
+        search.setSolveControl(control);
+        search.solve();
+        assertNull(control.getStopReason());
+        int shortest = TestMazes.checkPath(maze, search.getPackedPath(), 1, 1, end[0], end[1]);
+
+        // Without weighting the f-cost of the expanded cells only grows, up to the path's cost
+        assertFalse(reports.isEmpty());
+        for (int k = 0; k < reports.size(); k++) {
+            assertTrue(reports.get(k)[0] <= search.getExpandedCount());
+            assertTrue(reports.get(k)[1] <= shortest);
+            if (k > 0) {
+                assertTrue(reports.get(k)[0] > reports.get(k - 1)[0]);
+                assertTrue(reports.get(k)[1] >= reports.get(k - 1)[1]);
+            }
+        }
+    }
+
+    // A perfect maze whose corridors make any search expand many thousands of cells
+    private static MazeGrid longMaze() {
+        return TestMazes.perfect(new Random(12), 60, 80, 3, 1, 0, TestMazes.TOP, 0, TestMazes.BOTTOM, 79);
+    }
+
+    private static int[] farCorner(MazeGrid maze) {
+        return new int[]{maze.getHeight() - 2, maze.getWidth() - 2};
+    }
+}
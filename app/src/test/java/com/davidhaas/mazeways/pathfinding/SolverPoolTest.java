@@ -0,0 +1,89 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that work split on the SolverPool finishes even when every one of its threads is itself
+ * waiting on split work, the way the engines of a portfolio solve do.
+ */
+public class SolverPoolTest {
+
+    @Test(timeout = 60000)
+    public void join_finishesWithEveryThreadWaiting() throws Exception {
+        final AtomicInteger done = new AtomicInteger();
+        List<Future<Void>> outer = new ArrayList<>();
+        for (int t = 0; t < 2 * SolverPool.THREADS; t++) {
+            outer.add(SolverPool.executor().submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    List<FutureTask<Void>> pieces = new ArrayList<>();
+                    for (int p = 0; p < 4; p++) {
+                        pieces.add(SolverPool.fork(new Callable<Void>() {
+                            @Override
+                            public Void call() {
+                                done.incrementAndGet();
+                                return null;
+                            }
+                        }));
+                    }
+                    SolverPool.join(pieces);
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : outer)
+            future.get();
+        assertEquals(8 * SolverPool.THREADS, done.get());
+    }
+
+    @Test(timeout = 60000)
+    public void threadedDeltaStepping_isShortestOnEveryThread() throws Exception {
+        Random random = new Random(5);
+        final MazeGrid maze = TestMazes.random(random, 400, 300, 15);
+        List<int[]> queries = new ArrayList<>();
+        List<Future<PackedPath>> paths = new ArrayList<>();
+        for (int t = 0; t < SolverPool.THREADS + 1; t++) {
+            final int[] start = TestMazes.freeCell(random, maze), end = TestMazes.freeCell(random, maze);
+            queries.add(new int[]{start[0], start[1], end[0], end[1]});
+            paths.add(SolverPool.executor().submit(new Callable<PackedPath>() {
+                @Override
+                public PackedPath call() {
+                    DeltaStepping search = new DeltaStepping(maze, start[0], start[1], end[0], end[1], true);
+                    search.solve();
+                    return search.getPackedPath();
+                }
+            }));
+        }
+        for (int t = 0; t < paths.size(); t++) {
+            int[] q = queries.get(t);
+            TestMazes.checkShortest("PARALLEL on the pool", maze, paths.get(t).get(), q[0], q[1], q[2], q[3]);
+        }
+    }
+
+    @Test
+    public void join_passesOnPieceFailure() throws Exception {
+        List<FutureTask<Void>> pieces = new ArrayList<>();
+        pieces.add(SolverPool.fork(new Callable<Void>() {
+            @Override
+            public Void call() {
+                throw new IllegalStateException("piece");
+            }
+        }));
+        try {
+            SolverPool.join(pieces);
+            fail("No exception");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
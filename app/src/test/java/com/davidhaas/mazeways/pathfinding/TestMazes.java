@@ -0,0 +1,225 @@
+package com.davidhaas.mazeways.pathfinding;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Mazes for the pathfinding tests and a plain Dijkstra over the same 8-connected moves and step
+ * costs as the engines, to check their paths against.
+ */
+class TestMazes {
+    static final int TOP = 0, BOTTOM = 1, LEFT = 2, RIGHT = 3;
+
+    private TestMazes() {
+    }
+
+    /**
+     * @param wallPercent The chance of each pixel being a wall
+     */
+    static MazeGrid random(Random random, int width, int height, int wallPercent) {
+        MazeGrid maze = new MazeGrid(width, height);
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                if (random.nextInt(100) < wallPercent)
+                    maze.setWall(i, j, true);
+            }
+        }
+        return maze;
+    }
+
+    /**
+     * Draws a perfect maze, where every two cells are joined by exactly one route, the way a
+     * photo of a printed maze comes out of thresholding.
+     * @param rows The number of maze cells down
+     * @param cols The number of maze cells across
+     * @param corridor The width of a corridor in pixels
+     * @param wall The thickness of a wall in pixels
+     * @param margin The open pixels around the outer wall
+     * @param startSide The side of the opening in the outer wall for the start, TOP to RIGHT
+     * @param startCell The maze cell along that side the opening is in
+     * @param endSide The side of the opening for the end
+     * @param endCell The maze cell along that side the opening is in
+     */
+    static MazeGrid perfect(Random random, int rows, int cols, int corridor, int wall, int margin,
+                            int startSide, int startCell, int endSide, int endCell) {
+        int pitch = corridor + wall;
+        MazeGrid maze = new MazeGrid(cols * pitch + wall + 2 * margin, rows * pitch + wall + 2 * margin);
+
+        // Carves a spanning tree of the cells with a depth first walk
+        boolean[][] east = new boolean[rows][cols], south = new boolean[rows][cols];
+        boolean[][] seen = new boolean[rows][cols];
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{0, 0});
+        seen[0][0] = true;
+        while (!stack.isEmpty()) {
+            int ci = stack.peek()[0], cj = stack.peek()[1];
+            List<int[]> unseen = new ArrayList<>();
+            int[][] steps = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+            for (int[] step : steps) {
+                int ni = ci + step[0], nj = cj + step[1];
+                if (ni >= 0 && ni < rows && nj >= 0 && nj < cols && !seen[ni][nj])
+                    unseen.add(new int[]{ni, nj});
+            }
+            if (unseen.isEmpty()) {
+                stack.pop();
+                continue;
+            }
+            int[] next = unseen.get(random.nextInt(unseen.size()));
+            seen[next[0]][next[1]] = true;
+            if (next[0] == ci)
+                east[ci][Math.min(cj, next[1])] = true;
+            else
+                south[Math.min(ci, next[0])][cj] = true;
+            stack.push(next);
+        }
+
+        for (int i = 0; i <= rows * pitch; i++) {
+            for (int j = 0; j <= cols * pitch; j++) {
+                int ci = i / pitch, cj = j / pitch;
+                boolean inWallRow = i % pitch < wall, inWallCol = j % pitch < wall;
+                boolean isWall;
+                if (inWallRow && inWallCol)
+                    isWall = true;
+                else if (inWallRow)
+                    isWall = ci == 0 || ci == rows || !south[ci - 1][cj];
+                else if (inWallCol)
+                    isWall = cj == 0 || cj == cols || !east[ci][cj - 1];
+                else
+                    isWall = false;
+                if (isWall)
+                    maze.setWall(margin + i, margin + j, true);
+            }
+        }
+
+        int[][] openings = {{startSide, startCell}, {endSide, endCell}};
+        for (int[] opening : openings) {
+            int side = opening[0], along = opening[1] * pitch;
+            for (int a = wall; a < pitch; a++) {
+                for (int b = 0; b < wall; b++) {
+                    int i, j;
+                    if (side == TOP) {
+                        i = b;
+                        j = along + a;
+                    } else if (side == BOTTOM) {
+                        i = rows * pitch + b;
+                        j = along + a;
+                    } else if (side == LEFT) {
+                        i = along + a;
+                        j = b;
+                    } else {
+                        i = along + a;
+                        j = cols * pitch + b;
+                    }
+                    maze.setWall(margin + i, margin + j, false);
+                }
+            }
+        }
+        return maze;
+    }
+
+    /**
+     * @return The pixel of a maze that isn't a wall, picked at random, as {i, j}.
+     */
+    static int[] freeCell(Random random, MazeGrid maze) {
+        while (true) {
+            int i = random.nextInt(maze.getHeight()), j = random.nextInt(maze.getWidth());
+            if (!maze.isWall(i, j))
+                return new int[]{i, j};
+        }
+    }
+
+    /**
+     * @return The cost of the shortest path from the start to every pixel, or -1 where it can't
+     * reach.
+     */
+    static int[] distances(MazeGrid maze, int startI, int startJ) {
+        final int width = maze.getWidth(), height = maze.getHeight();
+        final int[] dist = new int[width * height];
+        Arrays.fill(dist, -1);
+        if (maze.isWall(startI, startJ))
+            return dist;
+
+        PriorityQueue<long[]> queue = new PriorityQueue<>(64, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        dist[startI * width + startJ] = 0;
+        queue.add(new long[]{0, startI * width + startJ});
+        while (!queue.isEmpty()) {
+            long[] entry = queue.poll();
+            int cell = (int) entry[1];
+            if (entry[0] > dist[cell])
+                continue;
+            int ci = cell / width, cj = cell % width;
+            for (int di = -1; di <= 1; di++) {
+                for (int dj = -1; dj <= 1; dj++) {
+                    int ni = ci + di, nj = cj + dj;
+                    if ((di == 0 && dj == 0) || ni < 0 || ni >= height || nj < 0 || nj >= width
+                            || maze.isWall(ni, nj))
+                        continue;
+                    int cost = dist[cell] + (di != 0 && dj != 0 ? Heuristics.DIAGONAL_COST : Heuristics.V_H_COST);
+                    int next = ni * width + nj;
+                    if (dist[next] == -1 || cost < dist[next]) {
+                        dist[next] = cost;
+                        queue.add(new long[]{cost, next});
+                    }
+                }
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * @return The cost of the shortest path between two pixels, or -1 if there's none.
+     */
+    static int shortest(MazeGrid maze, int startI, int startJ, int endI, int endJ) {
+        return distances(maze, startI, startJ)[endI * maze.getWidth() + endJ];
+    }
+
+    /**
+     * Checks that a path runs from the start to the end in single steps that never touch a wall.
+     * @return The path's cost
+     */
+    static int checkPath(MazeGrid maze, PackedPath path, int startI, int startJ, int endI, int endJ) {
+        assertNotNull("No path", path);
+        int last = path.length() - 1;
+        assertEquals("Start row", startI, path.getI(0));
+        assertEquals("Start column", startJ, path.getJ(0));
+        assertEquals("End row", endI, path.getI(last));
+        assertEquals("End column", endJ, path.getJ(last));
+
+        int cost = 0;
+        for (int k = 0; k <= last; k++) {
+            assertFalse("Wall at step " + k, maze.isWall(path.getI(k), path.getJ(k)));
+            if (k == 0)
+                continue;
+            int di = Math.abs(path.getI(k) - path.getI(k - 1)), dj = Math.abs(path.getJ(k) - path.getJ(k - 1));
+            assertTrue("Gap at step " + k, di <= 1 && dj <= 1 && di + dj > 0);
+            cost += di + dj == 2 ? Heuristics.DIAGONAL_COST : Heuristics.V_H_COST;
+        }
+        assertEquals("getCost", cost, path.getCost());
+        return cost;
+    }
+
+    /**
+     * Checks that a path is a shortest one, or that there's none when the reference finds none.
+     */
+    static void checkShortest(String engine, MazeGrid maze, PackedPath path,
+                              int startI, int startJ, int endI, int endJ) {
+        int expected = shortest(maze, startI, startJ, endI, endJ);
+        if (expected == -1)
+            assertNull(engine + " found a path where there's none", path);
+        else
+            assertEquals(engine, expected, checkPath(maze, path, startI, startJ, endI, endJ));
+    }
+}